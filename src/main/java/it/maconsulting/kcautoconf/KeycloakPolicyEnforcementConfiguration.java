@@ -0,0 +1,207 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.maconsulting.kcautoconf;
+
+import it.maconsulting.kcautoconf.annotations.RemoteAuthorization;
+import it.maconsulting.kcautoconf.enforcement.AuthorizationDecisionService;
+import it.maconsulting.kcautoconf.enforcement.CachingAuthorizationDecisionService;
+import it.maconsulting.kcautoconf.enforcement.CoalescingAuthorizationDecisionService;
+import it.maconsulting.kcautoconf.enforcement.LazyResourceIdResolver;
+import it.maconsulting.kcautoconf.enforcement.LocalScopeAuthorizationDecisionService;
+import it.maconsulting.kcautoconf.enforcement.PolicyEnforcementInterceptor;
+import it.maconsulting.kcautoconf.enforcement.ResourceIdResolver;
+import it.maconsulting.kcautoconf.enforcement.UmaAuthorizationDecisionService;
+import it.maconsulting.kcautoconf.services.AutoconfigurationService;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.net.http.HttpClient;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registers the {@link PolicyEnforcementInterceptor}, which enforces the policy enforcer configuration on the
+ * requests dispatched by Spring MVC, in place of the policy enforcer of the Keycloak adapter: the policy enforcer
+ * configuration is detached from the adapter properties at startup, so that the adapter does not enforce the same
+ * paths again. The interceptor has its own switch, {@code kcautoconf.enforcement.enabled}, and its own mode,
+ * {@code kcautoconf.enforcement.enforcement-mode}; when it is disabled, the configuration is left to the adapter.<br>
+ * The decisions are taken by the {@link AuthorizationDecisionService} bean, if any, or asked to the Keycloak
+ * token endpoint otherwise; the concurrent identical decisions are coalesced by the
+ * {@link CoalescingAuthorizationDecisionService}, and cached by the {@link CachingAuthorizationDecisionService}.
+ * With {@code kcautoconf.enforcement.lazy-resource-ids} the resource ids of the paths are fetched in bulk on the
+ * first request needing one, instead of at startup. With {@code kcautoconf.enforcement.local-scopes} the scopes of
+ * the token are checked locally, except for the handlers marked as {@link RemoteAuthorization}.<br>
+ * The executors created for the decisions and for the resource ids are shut down with the application context.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Configuration
+public class KeycloakPolicyEnforcementConfiguration implements WebMvcConfigurer, InitializingBean, DisposableBean {
+    private final AutoconfigurationService autoconfigurationService;
+    private final ObjectProvider<AuthorizationDecisionService> authorizationDecisionServices;
+    private final List<ExecutorService> executors = new CopyOnWriteArrayList<>();
+
+    @Value("${kcautoconf.enforcement.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${kcautoconf.enforcement.enforcement-mode:ENFORCING}")
+    private PolicyEnforcerConfig.EnforcementMode enforcementMode = PolicyEnforcerConfig.EnforcementMode.ENFORCING;
+
+    @Value("${kcautoconf.enforcement.decision-timeout:5000}")
+    private long decisionTimeout = 5000;
+
+    @Value("${kcautoconf.enforcement.coalesce:true}")
+    private boolean coalesce = true;
+
+    @Value("${kcautoconf.enforcement.decision-threads:8}")
+    private int decisionThreads = 8;
+
+    @Value("${kcautoconf.enforcement.max-in-flight:512}")
+    private int maxInFlight = 512;
+
+    @Value("${kcautoconf.enforcement.max-in-flight-wait:1000}")
+    private long maxInFlightWait = 1000;
+
+    @Value("${kcautoconf.enforcement.local-scopes:false}")
+    private boolean localScopes;
+
+    @Value("${kcautoconf.enforcement.decision-cache.max-entries:10000}")
+    private int decisionCacheMaxEntries = 10000;
+
+    @Value("${kcautoconf.enforcement.decision-cache.ttl:60000}")
+    private long decisionCacheTtl = 60000;
+
+    @Value("${kcautoconf.enforcement.lazy-resource-ids:false}")
+    private boolean lazyResourceIds;
+
+    @Value("${kcautoconf.enforcement.lazy-resource-ids-retry:60000}")
+    private long lazyResourceIdsRetry = 60000;
+
+    @Value("${kcautoconf.enforcement.lazy-resource-ids-wait:2000}")
+    private long lazyResourceIdsWait = 2000;
+
+    @Value("${kcautoconf.resource-ids.page-size:500}")
+    private int resourceIdsPageSize = 500;
+
+    @Value("${kcautoconf.resource-ids.concurrency:4}")
+    private int resourceIdsConcurrency = 4;
+
+    @Value("${kcautoconf.resource-ids.timeout:10000}")
+    private long resourceIdsTimeout = 10000;
+
+    public KeycloakPolicyEnforcementConfiguration(AutoconfigurationService autoconfigurationService,
+                                                  ObjectProvider<AuthorizationDecisionService> authorizationDecisionServices) {
+        this.autoconfigurationService = autoconfigurationService;
+        this.authorizationDecisionServices = authorizationDecisionServices;
+    }
+
+    /**
+     * Detaches the policy enforcer configuration from the adapter properties before the adapter builds its
+     * deployment, which happens on the first request.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled) {
+            autoconfigurationService.detachPolicyEnforcerConfig();
+        }
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (!enabled) {
+            return;
+        }
+        registry.addInterceptor(new PolicyEnforcementInterceptor(autoconfigurationService,
+                cached(local(coalesced(authorizationDecisionServices.getIfAvailable(this::umaAuthorizationDecisionService)))),
+                lazyResourceIds ? lazyResourceIdResolver() : null, enforcementMode));
+    }
+
+    private AuthorizationDecisionService coalesced(AuthorizationDecisionService authorizationDecisionService) {
+        return coalesce ? new CoalescingAuthorizationDecisionService(authorizationDecisionService) : authorizationDecisionService;
+    }
+
+    private AuthorizationDecisionService local(AuthorizationDecisionService authorizationDecisionService) {
+        return localScopes ? new LocalScopeAuthorizationDecisionService(autoconfigurationService, authorizationDecisionService)
+                : authorizationDecisionService;
+    }
+
+    private AuthorizationDecisionService cached(AuthorizationDecisionService authorizationDecisionService) {
+        if (decisionCacheMaxEntries <= 0) {
+            return authorizationDecisionService;
+        }
+        return new CachingAuthorizationDecisionService(authorizationDecisionService, decisionCacheMaxEntries,
+                Duration.ofMillis(decisionCacheTtl), Clock.systemUTC());
+    }
+
+    @Override
+    public void destroy() {
+        executors.forEach(ExecutorService::shutdown);
+    }
+
+    /**
+     * The executor handling the responses of the token endpoint. Its queue is not bounded, since the decision
+     * service bounds the requests in flight: a task is never rejected, nor run by the selector thread of the client.
+     */
+    private ExecutorService decisionExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(decisionThreads, decisionThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "kcautoconf-decision-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        executors.add(executor);
+        return executor;
+    }
+
+    private LazyResourceIdResolver lazyResourceIdResolver() {
+        Duration timeout = Duration.ofMillis(resourceIdsTimeout);
+        HttpClient httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+        ResourceIdResolver resourceIdResolver = new ResourceIdResolver(autoconfigurationService.getKeycloakSpringBootProperties(),
+                httpClient, timeout, resourceIdsPageSize, resourceIdsConcurrency);
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kcautoconf-resource-ids");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executors.add(executor);
+        return new LazyResourceIdResolver(resourceIdResolver, executor, Duration.ofMillis(lazyResourceIdsWait),
+                Duration.ofMillis(lazyResourceIdsRetry), Clock.systemUTC());
+    }
+
+    private AuthorizationDecisionService umaAuthorizationDecisionService() {
+        Duration timeout = Duration.ofMillis(decisionTimeout);
+        HttpClient httpClient = HttpClient.newBuilder().connectTimeout(timeout).executor(decisionExecutor()).build();
+        return new UmaAuthorizationDecisionService(autoconfigurationService.getKeycloakSpringBootProperties(), httpClient,
+                timeout, maxInFlight, Duration.ofMillis(maxInFlightWait));
+    }
+}
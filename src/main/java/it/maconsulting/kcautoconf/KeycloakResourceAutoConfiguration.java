@@ -15,9 +15,11 @@
  */
 package it.maconsulting.kcautoconf;
 
+import it.maconsulting.kcautoconf.scan.ScanReadinessGate;
 import it.maconsulting.kcautoconf.services.AutoconfigurationService;
 import org.keycloak.adapters.springboot.KeycloakSpringBootProperties;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 
@@ -26,7 +28,9 @@ import org.springframework.context.annotation.Configuration;
  * It integrates the {@link org.keycloak.adapters.springboot.KeycloakSpringBootProperties} and performs the automatic
  * resources and scopes configuration.<br>
  * The process is additive and not destructive. It means that if a policy-enforcement configuration section is present
- * in the application.properties or application.yaml file, it is kept.
+ * in the application.properties or application.yaml file, it is kept.<br>
+ * When {@code kcautoconf.scan.async} is enabled, the scan overlaps with the rest of the context startup and its
+ * paths are published by the {@link ScanReadinessGate} before the web server starts.
  *
  * @author Michele Arciprete
  * @since 1.0-SNAPSHOT
@@ -39,7 +43,12 @@ public class KeycloakResourceAutoConfiguration {
     @Autowired
     public KeycloakResourceAutoConfiguration(AutoconfigurationService autoconfigurationService) {
         this.autoconfigurationService = autoconfigurationService;
-        autoconfigurationService.updateKeycloakConfiguration();
+        autoconfigurationService.startKeycloakConfiguration();
+    }
+
+    @Bean
+    public ScanReadinessGate scanReadinessGate() {
+        return new ScanReadinessGate(autoconfigurationService);
     }
 
     public KeycloakSpringBootProperties kcProperties() {
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.maconsulting.kcautoconf.annotations;
+
+import it.maconsulting.kcautoconf.KeycloakPolicyEnforcementConfiguration;
+import org.springframework.context.annotation.Import;
+
+import java.lang.annotation.*;
+
+/**
+ * Enables the enforcement of the policy enforcer configuration in the Spring MVC layer, where each request is
+ * resolved by the handler method serving it.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+@Import({KeycloakPolicyEnforcementConfiguration.class})
+public @interface EnableKeycloakPolicyEnforcement {
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.maconsulting.kcautoconf.annotations;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a handler method, or all the handler methods of a controller, as public: their policy enforcement paths are
+ * generated with the {@code DISABLED} enforcement mode, so that the requests skip the policy enforcer, and they are
+ * not exported as Keycloak resources.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+public @interface PublicEndpoint {
+}
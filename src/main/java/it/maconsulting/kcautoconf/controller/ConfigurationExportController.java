@@ -2,39 +2,309 @@ package it.maconsulting.kcautoconf.controller;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonWriter;
 import it.maconsulting.kcautoconf.pojo.AuthorizationSettingsDTO;
+import it.maconsulting.kcautoconf.pojo.ConfigurationDeltaDTO;
+import it.maconsulting.kcautoconf.pojo.ResourcePageDTO;
+import it.maconsulting.kcautoconf.services.AutoconfigurationService;
+import it.maconsulting.kcautoconf.services.ConfigurationSnapshot;
+import it.maconsulting.kcautoconf.services.ExportIndex;
 import it.maconsulting.kcautoconf.services.KeycloakConfigurationGeneratorService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
 /**
+ * Serves the export page. The page is rendered once per configuration version and served from memory, plain or
+ * gzipped, with a strong ETag: a request carrying the current ETag in {@code If-None-Match} gets a 304.<br>
+ * The clients asking for {@code application/json} get the raw export instead, streamed to the response, or a page
+ * of the resources matching the query parameters.<br>
+ * The changes since a previous version of the configuration are returned by {@code GET ?since=<version>}, for the
+ * recent versions generated by this instance, whose resource hashes are kept, or by posting the baseline export.
+ *
  * @author Michele Arciprete
  * @since 0.3.0
  */
+@Slf4j
 @Controller
 @RequestMapping("${kcautoconf.export-path:/mac/configuration/export}")
 public class ConfigurationExportController {
 
+    private static final int STREAM_BUFFER_SIZE = 8192;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int SNAPSHOT_HISTORY_SIZE = 8;
+    private static final String CONFIGURATION_VERSION_HEADER = "X-Configuration-Version";
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
+
     private final KeycloakConfigurationGeneratorService keycloakConfigurationGeneratorService;
+    private final AutoconfigurationService autoconfigurationService;
+    private final ObjectProvider<SpringTemplateEngine> templateEngine;
+
+    private final AtomicReference<Versioned<ExportPayload>> exportPayload = new AtomicReference<>();
+    private final AtomicReference<Versioned<ExportIndex>> exportIndex = new AtomicReference<>();
+    private final AtomicReference<Versioned<ConfigurationSnapshot>> currentSnapshot = new AtomicReference<>();
+    private final Map<String, ConfigurationSnapshot> snapshotHistory = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ConfigurationSnapshot> eldest) {
+            return size() > SNAPSHOT_HISTORY_SIZE;
+        }
+    };
 
     @Autowired
-    public ConfigurationExportController(KeycloakConfigurationGeneratorService keycloakConfigurationGeneratorService) {
+    public ConfigurationExportController(KeycloakConfigurationGeneratorService keycloakConfigurationGeneratorService,
+                                         AutoconfigurationService autoconfigurationService,
+                                         ObjectProvider<SpringTemplateEngine> templateEngine) {
         this.keycloakConfigurationGeneratorService = keycloakConfigurationGeneratorService;
+        this.autoconfigurationService = autoconfigurationService;
+        this.templateEngine = templateEngine;
     }
 
     @GetMapping
-    public String configure(Model model) {
-        AuthorizationSettingsDTO paths = keycloakConfigurationGeneratorService.generateConfigurationAsJson();
-
-        GsonBuilder builder = new GsonBuilder();
-        Gson gson = builder.disableHtmlEscaping()
-                .setPrettyPrinting()
-                .create();
-        String json = gson.toJson(paths);
-        model.addAttribute("paths", json);
-        return "index";
+    public ResponseEntity<byte[]> configure(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        ExportPayload payload = getPayload();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(payload.getMediaType())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptsGzip(acceptEncoding)) {
+            return response.eTag(payload.getGzippedEtag())
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .body(payload.getGzippedBody());
+        }
+        return response.eTag(payload.getEtag()).body(payload.getBody());
+    }
+
+    /**
+     * Streams the export as compact JSON to the clients asking for {@code application/json}, one resource at a time:
+     * the serialized export is never held in memory, only the grouping of the paths by resource and the names of the
+     * resources by set of scopes, from which the permissions are written after the resources.<br>
+     * When any of the filters, the cursor or the limit is given, a single page of the matching resources is returned
+     * instead, together with the cursor of the next page.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public void export(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                       @RequestParam(value = "path", required = false) String pathPrefix,
+                       @RequestParam(value = "scope", required = false) String scope,
+                       @RequestParam(value = "name", required = false) String name,
+                       @RequestParam(value = "method", required = false) String method,
+                       @RequestParam(value = "cursor", required = false) String cursor,
+                       @RequestParam(value = "limit", required = false) Integer limit,
+                       HttpServletResponse response) throws IOException {
+        ResourcePageDTO page = null;
+        if (pathPrefix != null || scope != null || name != null || method != null || cursor != null || limit != null) {
+            int pageSize = limit != null ? Math.max(1, Math.min(limit, MAX_PAGE_SIZE)) : DEFAULT_PAGE_SIZE;
+            try {
+                page = findResources(new ExportIndex.Query(pathPrefix, scope, name,
+                        method != null ? method.toUpperCase(Locale.ROOT) : null, cursor, pageSize));
+            } catch (IllegalArgumentException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                return;
+            }
+        }
+        ResourcePageDTO resourcePage = page;
+        if (resourcePage == null) {
+            response.setHeader(CONFIGURATION_VERSION_HEADER, getCurrentVersion());
+        }
+        writeJson(response, acceptEncoding, writer -> {
+            if (resourcePage != null) {
+                GSON.toJson(resourcePage, ResourcePageDTO.class, writer);
+            } else {
+                keycloakConfigurationGeneratorService.writeConfigurationAsJson(writer);
+            }
+        });
+    }
+
+    /**
+     * Returns the changes since a version of the configuration still known to this instance, or a 409 if the
+     * version is unknown: in that case the client has to post its baseline export.
+     */
+    @GetMapping(params = "since", produces = MediaType.APPLICATION_JSON_VALUE)
+    public void delta(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                      @RequestParam("since") String since,
+                      HttpServletResponse response) throws IOException {
+        getCurrentVersion();
+        ConfigurationSnapshot baseline;
+        synchronized (snapshotHistory) {
+            baseline = snapshotHistory.get(since);
+        }
+        if (baseline == null) {
+            response.sendError(HttpServletResponse.SC_CONFLICT, "Unknown configuration version " + since);
+            return;
+        }
+        ConfigurationDeltaDTO delta = keycloakConfigurationGeneratorService.generateDelta(baseline,
+                keycloakConfigurationGeneratorService.generateConfigurationAsJson());
+        writeJson(response, acceptEncoding, writer -> GSON.toJson(delta, ConfigurationDeltaDTO.class, writer));
+    }
+
+    /**
+     * Returns the changes since the baseline export in the request body.
+     */
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public void delta(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                      HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+        AuthorizationSettingsDTO baseline;
+        try {
+            baseline = GSON.fromJson(request.getReader(), AuthorizationSettingsDTO.class);
+        } catch (JsonParseException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid baseline export");
+            return;
+        }
+        if (baseline == null) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing baseline export");
+            return;
+        }
+        ConfigurationDeltaDTO delta = keycloakConfigurationGeneratorService.generateDelta(
+                keycloakConfigurationGeneratorService.snapshot(baseline),
+                keycloakConfigurationGeneratorService.generateConfigurationAsJson());
+        writeJson(response, acceptEncoding, writer -> GSON.toJson(delta, ConfigurationDeltaDTO.class, writer));
+    }
+
+    private void writeJson(HttpServletResponse response, String acceptEncoding, JsonContent content) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        OutputStream out = response.getOutputStream();
+        if (acceptsGzip(acceptEncoding)) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            out = new GZIPOutputStream(out, STREAM_BUFFER_SIZE);
+        }
+        try (JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), STREAM_BUFFER_SIZE))) {
+            writer.setHtmlSafe(false);
+            content.write(writer);
+        }
+    }
+
+    /**
+     * @return the version of the current configuration, whose snapshot is also kept in the history of the recent
+     * versions; it is computed once per change of the paths, from the hashes of the resources
+     */
+    private String getCurrentVersion() {
+        return getCached(currentSnapshot, () -> {
+            ConfigurationSnapshot snapshot = keycloakConfigurationGeneratorService.snapshotConfiguration();
+            synchronized (snapshotHistory) {
+                snapshotHistory.put(snapshot.getVersion(), snapshot);
+            }
+            log.debug("Configuration version {} computed", snapshot.getVersion());
+            return snapshot;
+        }).getVersion();
+    }
+
+    private ResourcePageDTO findResources(ExportIndex.Query query) {
+        ExportIndex.Page found = getCached(exportIndex, () -> new ExportIndex(new ArrayList<>(
+                autoconfigurationService.getPolicyEnforcerConfig().getPaths()),
+                autoconfigurationService::hasResolvedResourceId))
+                .query(query);
+        ResourcePageDTO page = new ResourcePageDTO();
+        found.getResources().forEach(resource -> page.getResources().add(keycloakConfigurationGeneratorService.generateResource(resource)));
+        page.setNextCursor(found.getNextCursor());
+        return page;
+    }
+
+    /**
+     * @return true if the {@code Accept-Encoding} header accepts gzip, explicitly or through {@code *}, with a
+     * non-zero quality
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzipQuality = null;
+        Double anyQuality = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if ("gzip".equals(name) || "x-gzip".equals(name)) {
+                gzipQuality = quality;
+            } else if ("*".equals(name)) {
+                anyQuality = quality;
+            }
+        }
+        double quality = gzipQuality != null ? gzipQuality : anyQuality != null ? anyQuality : 0;
+        return quality > 0;
+    }
+
+    /**
+     * @return the rendered page of the current configuration, rendering it again only if the paths have changed
+     */
+    ExportPayload getPayload() {
+        return getCached(exportPayload, () -> {
+            AuthorizationSettingsDTO paths = keycloakConfigurationGeneratorService.generateConfigurationAsJson();
+            Context context = new Context();
+            context.setVariable("paths", GSON.toJson(paths));
+            String page = templateEngine.getObject().process("index", context);
+            ExportPayload payload = new ExportPayload(page, new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8));
+            log.debug("Export page rendered, etag {}", payload.getEtag());
+            return payload;
+        });
+    }
+
+    /**
+     * @return the value cached for the current configuration version, computing it again if the paths have changed
+     */
+    private <T> T getCached(AtomicReference<Versioned<T>> reference, Supplier<T> supplier) {
+        long version = autoconfigurationService.getConfigurationVersion();
+        int pathCount = autoconfigurationService.getPolicyEnforcerConfig().getPaths().size();
+        Versioned<T> cached = reference.get();
+        if (cached == null || cached.version != version || cached.pathCount != pathCount) {
+            cached = new Versioned<>(version, pathCount, supplier.get());
+            reference.set(cached);
+        }
+        return cached.value;
+    }
+
+    @FunctionalInterface
+    private interface JsonContent {
+        void write(JsonWriter writer) throws IOException;
+    }
+
+    private static final class Versioned<T> {
+        private final long version;
+        private final int pathCount;
+        private final T value;
+
+        private Versioned(long version, int pathCount, T value) {
+            this.version = version;
+            this.pathCount = pathCount;
+            this.value = value;
+        }
     }
 }
@@ -0,0 +1,63 @@
+package it.maconsulting.kcautoconf.controller;
+
+import lombok.Getter;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A rendered export, kept both as plain and as gzipped bytes, with the strong ETag of its content.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Getter
+public class ExportPayload {
+    private final MediaType mediaType;
+    private final byte[] body;
+    private final byte[] gzippedBody;
+    private final String etag;
+
+    public ExportPayload(String content, MediaType mediaType) {
+        this.mediaType = mediaType;
+        this.body = content.getBytes(StandardCharsets.UTF_8);
+        this.gzippedBody = gzip(body);
+        this.etag = "\"" + sha256(body) + "\"";
+    }
+
+    /**
+     * @return the ETag of the gzipped representation, which must differ from the plain one
+     */
+    public String getGzippedEtag() {
+        return etag.substring(0, etag.length() - 1) + "-gzip\"";
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static String sha256(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package it.maconsulting.kcautoconf.enforcement;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Takes the authorization decisions for the requests intercepted by the {@link PolicyEnforcementInterceptor}.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+public interface AuthorizationDecisionService {
+
+    /**
+     * @param request the request, with the enforcement configuration already resolved
+     * @return true if the token is granted the required scopes on the resource, false if it is denied them
+     * @throws DecisionUnavailableException if the decision could not be taken
+     */
+    boolean isAuthorized(EnforcementRequest request);
+
+    /**
+     * Takes the decision without blocking the calling thread, if the implementation supports it. By default the
+     * decision is taken on the calling thread.
+     *
+     * @param request the request, with the enforcement configuration already resolved
+     * @return the future decision, completed exceptionally with a {@link DecisionUnavailableException} if the
+     * decision could not be taken
+     */
+    default CompletableFuture<Boolean> isAuthorizedAsync(EnforcementRequest request) {
+        return CompletableFuture.completedFuture(isAuthorized(request));
+    }
+}
@@ -0,0 +1,116 @@
+package it.maconsulting.kcautoconf.enforcement;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.AccessToken;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the decisions of another {@link AuthorizationDecisionService}, by token (its SHA-256 hash), path, http verb
+ * and required scopes.<br>
+ * A decision is kept for at most {@code timeToLive}, and never beyond the expiration of its token; the requests whose
+ * token has not been verified by the Keycloak adapter, or has no expiration, are not cached. Only the decisions are
+ * cached: a {@link DecisionUnavailableException} of the delegate is propagated, and the next request asks again. When the cache grows beyond {@code maxEntries}, the expired
+ * decisions are dropped and, if that is not enough, a tenth of the cache is evicted in iteration order, without
+ * any lock or access bookkeeping on the hit path.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Slf4j
+public class CachingAuthorizationDecisionService implements AuthorizationDecisionService {
+
+    private final AuthorizationDecisionService delegate;
+    private final int maxEntries;
+    private final long timeToLive;
+    private final Clock clock;
+    private final Map<DecisionKey, Decision> decisions = new ConcurrentHashMap<>();
+
+    /**
+     * @param delegate   the service taking the decisions
+     * @param maxEntries the number of decisions above which the cache is shrunk
+     * @param timeToLive the maximum time a decision is reused
+     * @param clock      the clock used to expire the decisions
+     */
+    public CachingAuthorizationDecisionService(AuthorizationDecisionService delegate, int maxEntries, Duration timeToLive,
+                                               Clock clock) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The maximum number of cached decisions must be positive");
+        }
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive.toMillis();
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean isAuthorized(EnforcementRequest request) {
+        AccessToken accessToken = request.getAccessToken();
+        if (accessToken == null || accessToken.getExp() == null) {
+            return delegate.isAuthorized(request);
+        }
+        long now = clock.millis();
+        DecisionKey key = DecisionKey.of(hash(request.getToken()), request);
+        Decision decision = decisions.get(key);
+        if (decision != null && decision.getExpiresAt() > now) {
+            return decision.isAuthorized();
+        }
+        boolean authorized = delegate.isAuthorized(request);
+        long expiresAt = Math.min(now + timeToLive, accessToken.getExp() * 1000);
+        if (expiresAt > now) {
+            decisions.put(key, new Decision(authorized, expiresAt));
+            if (decisions.size() > maxEntries) {
+                shrink(now);
+            }
+        }
+        return authorized;
+    }
+
+    /**
+     * @return the number of cached decisions, including the expired ones not yet evicted
+     */
+    public int size() {
+        return decisions.size();
+    }
+
+    /**
+     * @return the SHA-256 hash of the encoded token, identifying it with a bounded key
+     */
+    private static String hash(String token) {
+        try {
+            return Base64.getEncoder().encodeToString(
+                    MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void shrink(long now) {
+        decisions.values().removeIf(decision -> decision.getExpiresAt() <= now);
+        int excess = decisions.size() - maxEntries;
+        if (excess > 0) {
+            int toEvict = Math.max(excess, maxEntries / 10);
+            Iterator<DecisionKey> keys = decisions.keySet().iterator();
+            for (int i = 0; i < toEvict && keys.hasNext(); i++) {
+                keys.next();
+                keys.remove();
+            }
+            log.debug("Evicted {} authorization decisions from the cache", toEvict);
+        }
+    }
+
+    @Value
+    private static class Decision {
+        boolean authorized;
+        long expiresAt;
+    }
+}
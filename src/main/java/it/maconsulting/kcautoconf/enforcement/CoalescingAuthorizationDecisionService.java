@@ -0,0 +1,74 @@
+package it.maconsulting.kcautoconf.enforcement;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces the concurrent identical decisions (same token, path, http verb and required scopes) asked to another
+ * {@link AuthorizationDecisionService}: while a decision is in flight, the other requests wait for the same
+ * {@link CompletableFuture} instead of asking for their own. The decision is forgotten as soon as it completes, the
+ * reuse of past decisions being up to the {@link CachingAuthorizationDecisionService}.<br>
+ * The decisions are taken with {@link AuthorizationDecisionService#isAuthorizedAsync(EnforcementRequest)}, so that
+ * the waiting threads only block on the future.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Slf4j
+public class CoalescingAuthorizationDecisionService implements AuthorizationDecisionService {
+
+    private final AuthorizationDecisionService delegate;
+    private final Map<DecisionKey, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+
+    public CoalescingAuthorizationDecisionService(AuthorizationDecisionService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean isAuthorized(EnforcementRequest request) {
+        try {
+            return isAuthorizedAsync(request).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof DecisionUnavailableException) {
+                throw (DecisionUnavailableException) e.getCause();
+            }
+            throw new DecisionUnavailableException("The authorization decision failed", e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isAuthorizedAsync(EnforcementRequest request) {
+        DecisionKey key = DecisionKey.of(request.getToken(), request);
+        CompletableFuture<Boolean> decision = new CompletableFuture<>();
+        CompletableFuture<Boolean> pending = inFlight.putIfAbsent(key, decision);
+        if (pending != null) {
+            log.trace("Joining the in-flight decision for {} {}", request.getVerb(), request.getTarget().getPathConfig().getPath());
+            return pending;
+        }
+        try {
+            delegate.isAuthorizedAsync(request).whenComplete((authorized, error) -> {
+                inFlight.remove(key, decision);
+                if (error != null) {
+                    decision.completeExceptionally(error);
+                } else {
+                    decision.complete(authorized);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, decision);
+            decision.completeExceptionally(e);
+        }
+        return decision;
+    }
+
+    /**
+     * @return the number of decisions currently in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,32 @@
+package it.maconsulting.kcautoconf.enforcement;
+
+import lombok.Value;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Identifies the authorization decisions that are bound to give the same result: same token, path, http verb and
+ * required scopes. The paths are compared by identity, as they are the instances of the policy enforcer
+ * configuration.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Value
+class DecisionKey {
+    String token;
+    PolicyEnforcerConfig.PathConfig pathConfig;
+    String verb;
+    List<String> scopes;
+
+    /**
+     * @param token   identifies the token, e.g. by its encoded form or its hash
+     * @param request the request to be authorized
+     */
+    static DecisionKey of(String token, EnforcementRequest request) {
+        return new DecisionKey(token, request.getTarget().getPathConfig(), request.getVerb().toUpperCase(Locale.ROOT),
+                request.getTarget().getRequiredScopes());
+    }
+}
@@ -0,0 +1,20 @@
+package it.maconsulting.kcautoconf.enforcement;
+
+/**
+ * Thrown by an {@link AuthorizationDecisionService} that could not take a decision, e.g. because Keycloak could not
+ * be reached in time or answered with an error. Unlike a denial, it is never cached, and the request is answered
+ * with {@code 503 Service Unavailable}.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+public class DecisionUnavailableException extends RuntimeException {
+
+    public DecisionUnavailableException(String message) {
+        super(message);
+    }
+
+    public DecisionUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
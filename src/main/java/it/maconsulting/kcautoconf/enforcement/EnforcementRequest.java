@@ -0,0 +1,28 @@
+package it.maconsulting.kcautoconf.enforcement;
+
+import lombok.Value;
+import org.keycloak.representations.AccessToken;
+
+/**
+ * An authorization decision to be taken for a request.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Value
+public class EnforcementRequest {
+    /**
+     * The encoded bearer token of the request.
+     */
+    String token;
+    /**
+     * The content of the token as verified by the Keycloak adapter, {@code null} if the adapter did not verify it.
+     */
+    AccessToken accessToken;
+    EnforcementTarget target;
+    String verb;
+    /**
+     * True if the handler of the request requires the remote evaluation of the policies.
+     */
+    boolean remoteRequired;
+}
@@ -0,0 +1,69 @@
+package it.maconsulting.kcautoconf.enforcement;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.With;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.util.List;
+
+/**
+ * The policy enforcement configuration that applies to a request: its path and, if configured, the configuration
+ * of its http verb.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Value
+@AllArgsConstructor
+public class EnforcementTarget {
+    PolicyEnforcerConfig.PathConfig pathConfig;
+    /**
+     * The configuration of the request verb, {@code null} if the path does not configure it.
+     */
+    PolicyEnforcerConfig.MethodConfig methodConfig;
+    /**
+     * The id of the resource of the path resolved on demand, {@code null} to use the one of the path.
+     */
+    @With
+    String resourceId;
+
+    public EnforcementTarget(PolicyEnforcerConfig.PathConfig pathConfig, PolicyEnforcerConfig.MethodConfig methodConfig) {
+        this(pathConfig, methodConfig, null);
+    }
+
+    /**
+     * @param pathConfig the path configuration
+     * @param verb       the http verb of the request
+     * @return the target, with the configuration of the verb looked up in the path methods
+     */
+    public static EnforcementTarget of(PolicyEnforcerConfig.PathConfig pathConfig, String verb) {
+        for (PolicyEnforcerConfig.MethodConfig methodConfig : pathConfig.getMethods()) {
+            if (verb.equalsIgnoreCase(methodConfig.getMethod())) {
+                return new EnforcementTarget(pathConfig, methodConfig);
+            }
+        }
+        return new EnforcementTarget(pathConfig, null);
+    }
+
+    /**
+     * @return the scopes required by the verb, or by the path if the verb does not define any
+     */
+    public List<String> getRequiredScopes() {
+        if (methodConfig != null && methodConfig.getScopes() != null && !methodConfig.getScopes().isEmpty()) {
+            return methodConfig.getScopes();
+        }
+        return pathConfig.getScopes() != null ? pathConfig.getScopes() : List.of();
+    }
+
+    /**
+     * @return the id of the resource of the path, resolved on demand or configured; {@code null} if unknown
+     */
+    public String getResourceId() {
+        return resourceId != null ? resourceId : pathConfig.getId();
+    }
+
+    public boolean isDisabled() {
+        return PolicyEnforcerConfig.EnforcementMode.DISABLED.equals(pathConfig.getEnforcementMode());
+    }
+}
@@ -0,0 +1,127 @@
+package it.maconsulting.kcautoconf.enforcement;
+
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.core.BridgeMethodResolver;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.method.HandlerMethod;
+
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * Binds the handler methods found by the scan to their policy enforcement configuration, so that a request already
+ * dispatched to a handler is resolved with a map lookup instead of matching its URI against the paths.<br>
+ * Both the scanned methods and the looked up ones are normalized by {@link #getUserMethod(Method, Class)}, so that
+ * the interface, proxy and bridge methods of a handler are bound to the same configuration.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+public class HandlerMethodRegistry {
+
+    private final Map<Method, List<HandlerPath>> handlerPaths = new HashMap<>();
+    private final int pathCount;
+
+    private HandlerMethodRegistry(Map<Method, List<String>> methodPaths, List<PolicyEnforcerConfig.PathConfig> paths) {
+        this.pathCount = paths.size();
+        Map<String, PolicyEnforcerConfig.PathConfig> pathConfigs = new HashMap<>();
+        paths.forEach(pathConfig -> pathConfigs.putIfAbsent(pathConfig.getPath(), pathConfig));
+        methodPaths.forEach((method, patterns) -> {
+            List<HandlerPath> resolved = new ArrayList<>(patterns.size());
+            patterns.forEach(pattern -> {
+                PolicyEnforcerConfig.PathConfig pathConfig = pathConfigs.get(pattern);
+                if (pathConfig != null) {
+                    resolved.add(new HandlerPath(pattern, pathConfig));
+                }
+            });
+            if (!resolved.isEmpty()) {
+                handlerPaths.merge(getUserMethod(method, method.getDeclaringClass()), resolved, (existing, added) -> {
+                    List<HandlerPath> merged = new ArrayList<>(existing);
+                    merged.addAll(added);
+                    return merged;
+                });
+            }
+        });
+    }
+
+    /**
+     * @param methodPaths the policy enforcement paths produced by each handler method
+     * @param paths       the policy enforcement configuration; when the same path is configured twice, the first
+     *                    one wins
+     * @return the registry
+     */
+    public static HandlerMethodRegistry build(Map<Method, List<String>> methodPaths, List<PolicyEnforcerConfig.PathConfig> paths) {
+        return new HandlerMethodRegistry(methodPaths, paths);
+    }
+
+    public int size() {
+        return handlerPaths.size();
+    }
+
+    /**
+     * @return the number of paths of the configuration the registry has been built from
+     */
+    public int getPathCount() {
+        return pathCount;
+    }
+
+    /**
+     * @param method   a handler method, possibly declared by an interface, a superclass or a proxy of the bean
+     * @param beanType the type of the handler bean
+     * @return the method implemented by the user class of the bean, resolved from its bridge method if needed
+     */
+    public static Method getUserMethod(Method method, Class<?> beanType) {
+        return BridgeMethodResolver.findBridgedMethod(ClassUtils.getMostSpecificMethod(method, ClassUtils.getUserClass(beanType)));
+    }
+
+    /**
+     * @param handlerMethod a handler method of a Spring MVC handler mapping
+     * @return the method implemented by the user class of the handler, unwrapping the JDK proxies of resolved beans
+     */
+    public static Method getUserMethod(HandlerMethod handlerMethod) {
+        Object bean = handlerMethod.getBean();
+        Class<?> beanType = bean instanceof String ? handlerMethod.getBeanType() : AopProxyUtils.ultimateTargetClass(bean);
+        return getUserMethod(handlerMethod.getMethod(), beanType);
+    }
+
+    /**
+     * @param handlerMethod the handler method chosen for the request
+     * @param pattern       the best matching pattern of the request, only used when the method is mapped to more
+     *                      than one path
+     * @param verb          the http verb of the request
+     * @return the enforcement target, or {@code null} if the method is unknown
+     */
+    public EnforcementTarget resolve(HandlerMethod handlerMethod, String pattern, String verb) {
+        List<HandlerPath> candidates = handlerPaths.get(getUserMethod(handlerMethod));
+        if (candidates == null) {
+            return null;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0).resolve(verb);
+        }
+        for (HandlerPath candidate : candidates) {
+            if (candidate.pattern.equals(pattern)) {
+                return candidate.resolve(verb);
+            }
+        }
+        return null;
+    }
+
+    private static final class HandlerPath {
+        private final String pattern;
+        private final Map<String, EnforcementTarget> targets = new HashMap<>();
+        private final EnforcementTarget defaultTarget;
+
+        private HandlerPath(String pattern, PolicyEnforcerConfig.PathConfig pathConfig) {
+            this.pattern = pattern;
+            pathConfig.getMethods().forEach(methodConfig -> targets.putIfAbsent(methodConfig.getMethod(),
+                    new EnforcementTarget(pathConfig, methodConfig)));
+            this.defaultTarget = new EnforcementTarget(pathConfig, null);
+        }
+
+        private EnforcementTarget resolve(String verb) {
+            return targets.getOrDefault(verb, defaultTarget);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package it.maconsulting.kcautoconf.enforcement;
+
+import it.maconsulting.kcautoconf.services.AutoconfigurationService;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Resolves the resource ids of the policy enforcer paths on demand, instead of at startup.<br>
+ * The paths of the requests are always matched against the local inventory built by the
+ * {@link AutoconfigurationService}; only the ids are fetched from Keycloak. The first enforced path without an id
+ * triggers a single bulk listing of the client resources on the {@code executor}, shared by all the requests
+ * arriving in the meantime, which wait for it at most {@code wait} and then go on without an id (i.e. by resource
+ * name). The listed ids are published at once as an immutable snapshot, while the paths are left untouched. The
+ * paths still without an id after that (e.g. resources not yet created in Keycloak) trigger a new listing only after
+ * {@code retryInterval}.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Slf4j
+public class LazyResourceIdResolver {
+
+    private final ResourceIdResolver resourceIdResolver;
+    private final Executor executor;
+    private final Duration wait;
+    private final Duration retryInterval;
+    private final Clock clock;
+
+    private volatile ResourceIdResolver.ResourceIds resourceIds = ResourceIdResolver.ResourceIds.EMPTY;
+    private final AtomicReference<CompletableFuture<ResourceIdResolver.ResourceIds>> listing = new AtomicReference<>();
+
+    private long lastAttempt;
+    private boolean attempted;
+
+    /**
+     * @param resourceIdResolver lists the resources of the client
+     * @param executor           runs the listings
+     * @param wait               the maximum time a request waits for a listing
+     * @param retryInterval      the minimum time between two listings
+     * @param clock              the clock measuring the retry interval
+     */
+    public LazyResourceIdResolver(ResourceIdResolver resourceIdResolver, Executor executor, Duration wait,
+                                  Duration retryInterval, Clock clock) {
+        this.resourceIdResolver = resourceIdResolver;
+        this.executor = executor;
+        this.wait = wait;
+        this.retryInterval = retryInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * Looks up the id of the resource of the path, listing the client resources if needed.
+     *
+     * @param pathConfig the path of the request being enforced
+     * @return the id of the resource of the path, or {@code null} if it is not known (yet)
+     */
+    public String getResourceId(PolicyEnforcerConfig.PathConfig pathConfig) {
+        if (pathConfig.getId() != null) {
+            return pathConfig.getId();
+        }
+        String id = resourceIds.get(pathConfig);
+        if (id != null || PolicyEnforcerConfig.EnforcementMode.DISABLED.equals(pathConfig.getEnforcementMode())) {
+            return id;
+        }
+        CompletableFuture<ResourceIdResolver.ResourceIds> pending = startListing(pathConfig);
+        if (pending == null) {
+            return null;
+        }
+        try {
+            return pending.get(wait.toMillis(), TimeUnit.MILLISECONDS).get(pathConfig);
+        } catch (TimeoutException e) {
+            log.debug("The client resources are still being listed, going on without the id of the path {}", pathConfig.getPath());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the listing in flight, or a new one if the retry interval has elapsed; {@code null} otherwise
+     */
+    private CompletableFuture<ResourceIdResolver.ResourceIds> startListing(PolicyEnforcerConfig.PathConfig pathConfig) {
+        CompletableFuture<ResourceIdResolver.ResourceIds> pending = listing.get();
+        if (pending != null) {
+            return pending;
+        }
+        synchronized (this) {
+            pending = listing.get();
+            if (pending != null) {
+                return pending;
+            }
+            long now = clock.millis();
+            if (attempted && now - lastAttempt < retryInterval.toMillis()) {
+                return null;
+            }
+            attempted = true;
+            lastAttempt = now;
+            log.debug("No resource id for the path {}, listing the client resources", pathConfig.getPath());
+            CompletableFuture<ResourceIdResolver.ResourceIds> future = new CompletableFuture<>();
+            listing.set(future);
+            try {
+                executor.execute(() -> list(future));
+            } catch (RejectedExecutionException e) {
+                log.warn("Unable to list the client resources: {}", e.getMessage());
+                listing.set(null);
+                future.complete(resourceIds);
+            }
+            return future;
+        }
+    }
+
+    private void list(CompletableFuture<ResourceIdResolver.ResourceIds> future) {
+        try {
+            resourceIds = resourceIdResolver.fetchResourceIds();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to list the client resources, the paths without an id are enforced by resource name: {}",
+                    e.getMessage());
+        } finally {
+            listing.set(null);
+            future.complete(resourceIds);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package it.maconsulting.kcautoconf.enforcement;
+
+import it.maconsulting.kcautoconf.services.AutoconfigurationService;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+import org.keycloak.representations.idm.authorization.Permission;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Authorizes the requests locally, by checking that the token carries the scopes required by the endpoint.<br>
+ * The granted scopes are read once per request from the permissions of the token (RPT) on the resource of the path,
+ * matched by id or, if the id is not known, by name, and compared with the precompiled {@link ScopeBitsets}
+ * according to the scopes enforcement mode of the method ({@code ALL} by default); when the verb has no method
+ * configuration, the scopes of the path are required in {@code ANY} mode, as the policy enforcer of the adapter does.
+ * The {@code scope} claim of the token is not taken into account, since it is not bound to any resource. The requests
+ * marked as requiring a remote evaluation, the ones requiring no scope, the ones to a path without a known resource,
+ * the ones whose token has not been verified by the Keycloak adapter and the ones whose token carries no
+ * {@code authorization} claim (i.e. a plain access token, not an RPT) are delegated to the remote decision service.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Slf4j
+public class LocalScopeAuthorizationDecisionService implements AuthorizationDecisionService {
+
+    private final AutoconfigurationService autoconfigurationService;
+    private final AuthorizationDecisionService remoteDecisionService;
+
+    public LocalScopeAuthorizationDecisionService(AutoconfigurationService autoconfigurationService,
+                                                  AuthorizationDecisionService remoteDecisionService) {
+        this.autoconfigurationService = autoconfigurationService;
+        this.remoteDecisionService = remoteDecisionService;
+    }
+
+    @Override
+    public boolean isAuthorized(EnforcementRequest request) {
+        EnforcementTarget target = request.getTarget();
+        if (request.isRemoteRequired() || request.getAccessToken() == null ||
+                request.getAccessToken().getAuthorization() == null ||
+                (target.getResourceId() == null && target.getPathConfig().getName() == null)) {
+            return remoteDecisionService.isAuthorized(request);
+        }
+        ScopeBitsets scopeBitsets = autoconfigurationService.getScopeBitsets();
+        BitSet required = scopeBitsets.getRequirement(target);
+        if (required == null) {
+            return remoteDecisionService.isAuthorized(request);
+        }
+        List<Permission> permissions = getPermissions(request.getAccessToken(), target);
+        BitSet granted = scopeBitsets.toBitSet(permissions.stream()
+                .filter(permission -> permission.getScopes() != null)
+                .flatMap(permission -> permission.getScopes().stream())
+                .collect(Collectors.toList()));
+        PolicyEnforcerConfig.MethodConfig methodConfig = target.getMethodConfig();
+        PolicyEnforcerConfig.ScopeEnforcementMode mode;
+        if (methodConfig == null) {
+            mode = PolicyEnforcerConfig.ScopeEnforcementMode.ANY;
+        } else {
+            mode = methodConfig.getScopesEnforcementMode() != null ?
+                    methodConfig.getScopesEnforcementMode() : PolicyEnforcerConfig.ScopeEnforcementMode.ALL;
+        }
+        switch (mode) {
+            case DISABLED:
+                return !permissions.isEmpty();
+            case ANY:
+                return required.intersects(granted);
+            default:
+                BitSet missing = (BitSet) required.clone();
+                missing.andNot(granted);
+                return missing.isEmpty();
+        }
+    }
+
+    /**
+     * @return the permissions of the token (RPT) on the resource of the path
+     */
+    private List<Permission> getPermissions(AccessToken accessToken, EnforcementTarget target) {
+        if (accessToken.getAuthorization().getPermissions() == null) {
+            return List.of();
+        }
+        return accessToken.getAuthorization().getPermissions().stream()
+                .filter(permission -> isPermissionOn(permission, target))
+                .collect(Collectors.toList());
+    }
+
+    private boolean isPermissionOn(Permission permission, EnforcementTarget target) {
+        if (target.getResourceId() != null) {
+            return target.getResourceId().equals(permission.getResourceId());
+        }
+        return target.getPathConfig().getName().equals(permission.getResourceName());
+    }
+}
@@ -0,0 +1,159 @@
+package it.maconsulting.kcautoconf.enforcement;
+
+import org.keycloak.common.util.PathMatcher;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled index of the policy enforcement paths, resolving a request path to its {@link PolicyEnforcerConfig.PathConfig}
+ * in time proportional to the number of its segments.<br>
+ * Static paths are resolved by an exact-match hash table; templates made of literal, {@code {variable}} and
+ * trailing {@code *} segments are compiled into a segment trie, where literal segments are preferred over variables,
+ * and variables over wildcards. The few patterns that cannot be represented in the trie (e.g. {@code /files/*.pdf}
+ * or {@code /{id}.json}) are left, as a fallback, to the {@link PathMatcher} of Keycloak, which the policy enforcer of
+ * the adapter uses for all the paths; it is consulted before the trailing wildcards.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+public class PathConfigIndex {
+
+    private static final Pattern VARIABLE = Pattern.compile("\\{[^/{}]+}");
+
+    private final Map<String, PolicyEnforcerConfig.PathConfig> staticPaths = new HashMap<>();
+    private final Node root = new Node();
+    private final FallbackMatcher fallbackMatcher = new FallbackMatcher();
+    private final int size;
+
+    private PathConfigIndex(List<PolicyEnforcerConfig.PathConfig> paths) {
+        paths.forEach(this::add);
+        this.size = paths.size();
+    }
+
+    /**
+     * @param paths the path configurations; when the same path is configured twice, the first one wins
+     * @return the compiled index
+     */
+    public static PathConfigIndex compile(List<PolicyEnforcerConfig.PathConfig> paths) {
+        return new PathConfigIndex(paths);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param path the request path, without the context path
+     * @return the matching configuration, or {@code null} if no configuration matches
+     */
+    public PolicyEnforcerConfig.PathConfig resolve(String path) {
+        String normalized = normalize(path);
+        PolicyEnforcerConfig.PathConfig pathConfig = staticPaths.get(normalized);
+        if (pathConfig != null) {
+            return pathConfig;
+        }
+        String[] segments = segments(normalized);
+        pathConfig = match(root, segments, 0, false);
+        if (pathConfig != null) {
+            return pathConfig;
+        }
+        if (!fallbackMatcher.paths.isEmpty()) {
+            pathConfig = fallbackMatcher.matches(normalized);
+            if (pathConfig != null) {
+                return pathConfig;
+            }
+        }
+        return match(root, segments, 0, true);
+    }
+
+    /**
+     * Walks the trie depth first, preferring literal segments over variables; wildcards are only considered when
+     * {@code wildcards} is true, so that a full template match always wins over a trailing {@code *}.
+     */
+    private PolicyEnforcerConfig.PathConfig match(Node node, String[] segments, int index, boolean wildcards) {
+        if (index == segments.length) {
+            return node.terminal != null ? node.terminal : wildcards ? node.wildcard : null;
+        }
+        Node literal = node.literals.get(segments[index]);
+        if (literal != null) {
+            PolicyEnforcerConfig.PathConfig pathConfig = match(literal, segments, index + 1, wildcards);
+            if (pathConfig != null) {
+                return pathConfig;
+            }
+        }
+        if (node.variable != null) {
+            PolicyEnforcerConfig.PathConfig pathConfig = match(node.variable, segments, index + 1, wildcards);
+            if (pathConfig != null) {
+                return pathConfig;
+            }
+        }
+        return wildcards ? node.wildcard : null;
+    }
+
+    private void add(PolicyEnforcerConfig.PathConfig pathConfig) {
+        if (pathConfig.getPath() == null) {
+            return;
+        }
+        String path = normalize(pathConfig.getPath());
+        if (path.indexOf('{') < 0 && path.indexOf('*') < 0) {
+            staticPaths.putIfAbsent(path, pathConfig);
+            return;
+        }
+        String[] segments = segments(path);
+        Node node = root;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if ("*".equals(segment) && i == segments.length - 1) {
+                if (node.wildcard == null) {
+                    node.wildcard = pathConfig;
+                }
+                return;
+            } else if (VARIABLE.matcher(segment).matches()) {
+                node = node.variable != null ? node.variable : (node.variable = new Node());
+            } else if (segment.indexOf('{') < 0 && segment.indexOf('*') < 0) {
+                node = node.literals.computeIfAbsent(segment, key -> new Node());
+            } else {
+                fallbackMatcher.paths.add(pathConfig);
+                return;
+            }
+        }
+        if (node.terminal == null) {
+            node.terminal = pathConfig;
+        }
+    }
+
+    private static String normalize(String path) {
+        String normalized = path.startsWith("/") ? path : "/" + path;
+        return normalized.length() > 1 && normalized.endsWith("/") ? normalized.substring(0, normalized.length() - 1) : normalized;
+    }
+
+    private static String[] segments(String path) {
+        return "/".equals(path) ? new String[0] : path.substring(1).split("/", -1);
+    }
+
+    /**
+     * Matches the paths the trie cannot represent as the policy enforcer of the adapter does, in configuration order.
+     */
+    private static final class FallbackMatcher extends PathMatcher<PolicyEnforcerConfig.PathConfig> {
+        private final List<PolicyEnforcerConfig.PathConfig> paths = new ArrayList<>();
+
+        @Override
+        protected String getPath(PolicyEnforcerConfig.PathConfig pathConfig) {
+            return pathConfig.getPath();
+        }
+
+        @Override
+        protected Collection<PolicyEnforcerConfig.PathConfig> getPaths() {
+            return paths;
+        }
+    }
+
+    private static final class Node {
+        private final Map<String, Node> literals = new HashMap<>();
+        private Node variable;
+        private PolicyEnforcerConfig.PathConfig terminal;
+        private PolicyEnforcerConfig.PathConfig wildcard;
+    }
+}
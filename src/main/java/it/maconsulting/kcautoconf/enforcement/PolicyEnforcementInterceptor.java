@@ -0,0 +1,183 @@
+package it.maconsulting.kcautoconf.enforcement;
+
+import it.maconsulting.kcautoconf.annotations.RemoteAuthorization;
+import it.maconsulting.kcautoconf.services.AutoconfigurationService;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.KeycloakSecurityContext;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Enforces the policy enforcer configuration on the requests dispatched by Spring MVC.<br>
+ * The configuration of a request is looked up by the {@link HandlerMethod} chosen by the {@code DispatcherServlet},
+ * through the {@link HandlerMethodRegistry}; the requests whose handler is unknown to the scan (e.g. paths coming
+ * from the application properties, or from the compile-time inventory) are resolved by their path, through the
+ * {@link PathConfigIndex}. The decision is then delegated to the {@link AuthorizationDecisionService}.<br>
+ * The enforcement modes are honoured as the policy enforcer of the adapter does: nothing is enforced when the
+ * interceptor is {@code DISABLED}, a {@code DISABLED} path is not enforced, and the requests to a {@code PERMISSIVE}
+ * path, or to any path while the interceptor is {@code PERMISSIVE}, are let through even when denied. The mode of the
+ * interceptor is its own: the one of the adapter policy enforcer is not read.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Slf4j
+public class PolicyEnforcementInterceptor implements HandlerInterceptor {
+
+    private static final UrlPathHelper URL_PATH_HELPER = new UrlPathHelper();
+
+    private final AutoconfigurationService autoconfigurationService;
+    private final AuthorizationDecisionService authorizationDecisionService;
+    private final LazyResourceIdResolver lazyResourceIdResolver;
+    private final PolicyEnforcerConfig.EnforcementMode enforcementMode;
+
+    public PolicyEnforcementInterceptor(AutoconfigurationService autoconfigurationService,
+                                        AuthorizationDecisionService authorizationDecisionService) {
+        this(autoconfigurationService, authorizationDecisionService, null);
+    }
+
+    /**
+     * @param lazyResourceIdResolver if not {@code null}, resolves the resource id of the enforced paths without one
+     *                               before asking for the decision
+     */
+    public PolicyEnforcementInterceptor(AutoconfigurationService autoconfigurationService,
+                                        AuthorizationDecisionService authorizationDecisionService,
+                                        LazyResourceIdResolver lazyResourceIdResolver) {
+        this(autoconfigurationService, authorizationDecisionService, lazyResourceIdResolver,
+                PolicyEnforcerConfig.EnforcementMode.ENFORCING);
+    }
+
+    /**
+     * @param lazyResourceIdResolver if not {@code null}, resolves the resource id of the enforced paths without one
+     *                               before asking for the decision
+     * @param enforcementMode        the enforcement mode of the interceptor
+     */
+    public PolicyEnforcementInterceptor(AutoconfigurationService autoconfigurationService,
+                                        AuthorizationDecisionService authorizationDecisionService,
+                                        LazyResourceIdResolver lazyResourceIdResolver,
+                                        PolicyEnforcerConfig.EnforcementMode enforcementMode) {
+        this.autoconfigurationService = autoconfigurationService;
+        this.authorizationDecisionService = authorizationDecisionService;
+        this.lazyResourceIdResolver = lazyResourceIdResolver;
+        this.enforcementMode = enforcementMode;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if (PolicyEnforcerConfig.EnforcementMode.DISABLED.equals(enforcementMode)) {
+            return true;
+        }
+        EnforcementTarget target = resolveTarget(request, handler);
+        if (target == null) {
+            if (PolicyEnforcerConfig.EnforcementMode.ENFORCING.equals(enforcementMode)) {
+                log.debug("No policy enforcement path for {} {}, denying the request", request.getMethod(), request.getRequestURI());
+                response.sendError(HttpServletResponse.SC_FORBIDDEN);
+                return false;
+            }
+            return true;
+        }
+        if (target.isDisabled()) {
+            return true;
+        }
+        boolean permissive = PolicyEnforcerConfig.EnforcementMode.PERMISSIVE.equals(enforcementMode) ||
+                PolicyEnforcerConfig.EnforcementMode.PERMISSIVE.equals(target.getPathConfig().getEnforcementMode());
+        String token = getBearerToken(request);
+        if (token == null) {
+            if (permissive) {
+                log.debug("No bearer token for {} {}, allowed by the permissive mode", request.getMethod(), request.getRequestURI());
+                return true;
+            }
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return false;
+        }
+        if (lazyResourceIdResolver != null && target.getResourceId() == null) {
+            target = target.withResourceId(lazyResourceIdResolver.getResourceId(target.getPathConfig()));
+        }
+        EnforcementRequest enforcementRequest = new EnforcementRequest(token, getAccessToken(request), target,
+                request.getMethod(), isRemoteRequired(handler));
+        boolean authorized;
+        try {
+            authorized = authorizationDecisionService.isAuthorized(enforcementRequest);
+        } catch (DecisionUnavailableException e) {
+            if (permissive) {
+                log.debug("No decision for {} {}, allowed by the permissive mode", request.getMethod(), request.getRequestURI());
+                return true;
+            }
+            log.debug("No decision for {} {}: {}", request.getMethod(), request.getRequestURI(), e.getMessage());
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return false;
+        }
+        if (!authorized) {
+            if (permissive) {
+                log.debug("Access to {} {} denied, allowed by the permissive mode", request.getMethod(), request.getRequestURI());
+                return true;
+            }
+            log.debug("Access denied to {} {}", request.getMethod(), request.getRequestURI());
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the enforcement configuration of the request, or {@code null} if no configured path matches it
+     */
+    public EnforcementTarget resolveTarget(HttpServletRequest request, Object handler) {
+        if (handler instanceof HandlerMethod) {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            EnforcementTarget target = autoconfigurationService.getHandlerMethodRegistry().resolve(
+                    (HandlerMethod) handler, pattern != null ? pattern.toString() : null, request.getMethod());
+            if (target != null) {
+                return target;
+            }
+        }
+        PolicyEnforcerConfig.PathConfig pathConfig = autoconfigurationService.getPathConfigIndex()
+                .resolve(URL_PATH_HELPER.getPathWithinApplication(request));
+        return pathConfig != null ? EnforcementTarget.of(pathConfig, request.getMethod()) : null;
+    }
+
+    private boolean isRemoteRequired(Object handler) {
+        if (!(handler instanceof HandlerMethod)) {
+            return false;
+        }
+        HandlerMethod handlerMethod = (HandlerMethod) handler;
+        return handlerMethod.hasMethodAnnotation(RemoteAuthorization.class) ||
+                AnnotatedElementUtils.hasAnnotation(handlerMethod.getBeanType(), RemoteAuthorization.class);
+    }
+
+    private String getBearerToken(HttpServletRequest request) {
+        KeycloakSecurityContext securityContext = getSecurityContext(request);
+        if (securityContext != null) {
+            return securityContext.getTokenString();
+        }
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization != null && authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return authorization.substring(7).trim();
+        }
+        return null;
+    }
+
+    /**
+     * Reads the token verified by the Keycloak adapter. The content of a bearer token not verified by the adapter is
+     * never read, since nothing taken from it could be trusted: such a request is left to the remote decision.
+     */
+    private AccessToken getAccessToken(HttpServletRequest request) {
+        KeycloakSecurityContext securityContext = getSecurityContext(request);
+        return securityContext != null ? securityContext.getToken() : null;
+    }
+
+    private KeycloakSecurityContext getSecurityContext(HttpServletRequest request) {
+        Object securityContext = request.getAttribute(KeycloakSecurityContext.class.getName());
+        return securityContext instanceof KeycloakSecurityContext ? (KeycloakSecurityContext) securityContext : null;
+    }
+}
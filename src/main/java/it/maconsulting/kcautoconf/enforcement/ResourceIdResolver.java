@@ -0,0 +1,259 @@
+package it.maconsulting.kcautoconf.enforcement;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.adapters.config.AdapterConfig;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Fills the {@code id} of the policy enforcer paths with the ids of the resources already defined in the Keycloak
+ * client, so that the policy enforcer does not look each of them up on the server when it is initialized.<br>
+ * All the resources of the client are listed through the protection API, in pages of {@code pageSize} resources,
+ * with up to {@code concurrency} pages requested at the same time. A path is matched to a resource by name, as the
+ * policy enforcer does, or by uri when it has no name.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Slf4j
+public class ResourceIdResolver {
+
+    private final HttpClient httpClient;
+    private final URI realmUri;
+    private final String clientId;
+    private final String clientSecret;
+    private final Duration timeout;
+    private final int pageSize;
+    private final int concurrency;
+
+    /**
+     * @param adapterConfig the keycloak adapter configuration, providing the server url, the realm and the client
+     *                      credentials
+     * @param httpClient    the client used to reach the protection API
+     * @param timeout       the timeout of each request
+     * @param pageSize      the number of resources requested with each page
+     * @param concurrency   the maximum number of pages requested at the same time
+     */
+    public ResourceIdResolver(AdapterConfig adapterConfig, HttpClient httpClient, Duration timeout, int pageSize, int concurrency) {
+        this(realmUri(adapterConfig), adapterConfig.getResource(), clientSecret(adapterConfig), httpClient, timeout,
+                pageSize, concurrency);
+    }
+
+    public ResourceIdResolver(URI realmUri, String clientId, String clientSecret, HttpClient httpClient, Duration timeout,
+                              int pageSize, int concurrency) {
+        if (pageSize < 1 || concurrency < 1) {
+            throw new IllegalArgumentException("The page size and the concurrency must be positive");
+        }
+        this.realmUri = realmUri;
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.httpClient = httpClient;
+        this.timeout = timeout;
+        this.pageSize = pageSize;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Sets the id of the enforced paths without one. Any failure in reaching Keycloak is logged and leaves the paths
+     * unchanged, so that the policy enforcer falls back to its own lookups.
+     *
+     * @param paths the paths to update
+     * @return the number of paths whose id has been set
+     */
+    public int resolve(List<PolicyEnforcerConfig.PathConfig> paths) {
+        ResourceIds resourceIds;
+        try {
+            resourceIds = fetchResourceIds();
+        } catch (IOException e) {
+            log.warn("Unable to list the resources of the client {}, their ids will be looked up by the policy enforcer: {}",
+                    clientId, e.getMessage());
+            return 0;
+        }
+        int resolved = 0;
+        for (PolicyEnforcerConfig.PathConfig pathConfig : paths) {
+            if (pathConfig.getId() != null ||
+                    PolicyEnforcerConfig.EnforcementMode.DISABLED.equals(pathConfig.getEnforcementMode())) {
+                continue;
+            }
+            String id = resourceIds.get(pathConfig);
+            if (id != null) {
+                pathConfig.setId(id);
+                resolved++;
+            }
+        }
+        log.info("Resolved the ids of {} paths out of {}, from {} resources of the client {}",
+                resolved, paths.size(), resourceIds.getResourceCount(), clientId);
+        return resolved;
+    }
+
+    /**
+     * Lists all the resources of the client, and indexes their ids by name and by uri.
+     *
+     * @return the ids of the resources of the client
+     * @throws IOException if Keycloak cannot be reached or answers with an error
+     */
+    public ResourceIds fetchResourceIds() throws IOException {
+        List<RemoteResource> resources = fetchResources();
+        Map<String, String> idsByName = new HashMap<>();
+        Map<String, String> idsByUri = new HashMap<>();
+        resources.forEach(resource -> {
+            if (resource.getName() != null) {
+                idsByName.putIfAbsent(resource.getName(), resource.getId());
+            }
+            resource.getUris().forEach(uri -> idsByUri.putIfAbsent(uri, resource.getId()));
+        });
+        return new ResourceIds(Map.copyOf(idsByName), Map.copyOf(idsByUri), resources.size());
+    }
+
+    /**
+     * Lists all the resources of the client, with a protection API token obtained with the client credentials.
+     *
+     * @return the resources of the client
+     * @throws IOException if Keycloak cannot be reached or answers with an error
+     */
+    public List<RemoteResource> fetchResources() throws IOException {
+        String protectionApiToken = fetchProtectionApiToken();
+        List<RemoteResource> resources = new ArrayList<>();
+        int requests = 0;
+        boolean lastPage = false;
+        for (int first = 0; !lastPage; first += pageSize * concurrency) {
+            List<CompletableFuture<List<RemoteResource>>> pages = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                pages.add(fetchPage(protectionApiToken, first + i * pageSize));
+                requests++;
+            }
+            for (CompletableFuture<List<RemoteResource>> page : pages) {
+                List<RemoteResource> pageResources = join(page);
+                resources.addAll(pageResources);
+                lastPage |= pageResources.size() < pageSize;
+            }
+        }
+        log.debug("Listed {} resources of the client {} with {} requests", resources.size(), clientId, requests);
+        return resources;
+    }
+
+    private String fetchProtectionApiToken() throws IOException {
+        String form = "grant_type=client_credentials&client_id=" + encode(clientId) +
+                (clientSecret != null ? "&client_secret=" + encode(clientSecret) : "");
+        HttpRequest request = HttpRequest.newBuilder(URI.create(realmUri + "/protocol/openid-connect/token"))
+                .timeout(timeout)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        String body = join(httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> checkStatus(request, response)));
+        JsonElement accessToken = JsonParser.parseString(body).getAsJsonObject().get("access_token");
+        if (accessToken == null) {
+            throw new IOException("No access token returned by " + request.uri());
+        }
+        return accessToken.getAsString();
+    }
+
+    private CompletableFuture<List<RemoteResource>> fetchPage(String protectionApiToken, int first) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(realmUri + "/authz/protection/resource_set?deep=true&first="
+                        + first + "&max=" + pageSize))
+                .timeout(timeout)
+                .header("Authorization", "Bearer " + protectionApiToken)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> parseResources(checkStatus(request, response)));
+    }
+
+    private static String checkStatus(HttpRequest request, HttpResponse<String> response) {
+        if (response.statusCode() != 200) {
+            throw new CompletionException(new IOException("Unexpected status " + response.statusCode() + " from " + request.uri()));
+        }
+        return response.body();
+    }
+
+    private static List<RemoteResource> parseResources(String body) {
+        List<RemoteResource> resources = new ArrayList<>();
+        for (JsonElement element : JsonParser.parseString(body).getAsJsonArray()) {
+            JsonObject resource = element.getAsJsonObject();
+            List<String> uris = new ArrayList<>();
+            if (resource.has("uris")) {
+                resource.getAsJsonArray("uris").forEach(uri -> uris.add(uri.getAsString()));
+            }
+            resources.add(new RemoteResource(resource.get("_id").getAsString(),
+                    resource.has("name") ? resource.get("name").getAsString() : null, List.copyOf(uris)));
+        }
+        return resources;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause() != null ? e.getCause().getMessage() : e.getMessage(), e);
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static URI realmUri(AdapterConfig adapterConfig) {
+        String serverUrl = adapterConfig.getAuthServerUrl();
+        if (serverUrl.endsWith("/")) {
+            serverUrl = serverUrl.substring(0, serverUrl.length() - 1);
+        }
+        return URI.create(serverUrl + "/realms/" + encode(adapterConfig.getRealm()));
+    }
+
+    private static String clientSecret(AdapterConfig adapterConfig) {
+        Object secret = adapterConfig.getCredentials() != null ? adapterConfig.getCredentials().get("secret") : null;
+        return secret != null ? secret.toString() : null;
+    }
+
+    /**
+     * The ids of the resources of the client, by name and by uri. Immutable, so that it can be shared between
+     * threads once published.
+     */
+    @Value
+    public static class ResourceIds {
+        public static final ResourceIds EMPTY = new ResourceIds(Map.of(), Map.of(), 0);
+
+        Map<String, String> idsByName;
+        Map<String, String> idsByUri;
+        int resourceCount;
+
+        /**
+         * @param pathConfig a policy enforcer path
+         * @return the id of the resource of the path, matched by name, or by uri if the path has no name; {@code null}
+         * if the client has no such resource
+         */
+        public String get(PolicyEnforcerConfig.PathConfig pathConfig) {
+            return pathConfig.getName() != null ? idsByName.get(pathConfig.getName()) : idsByUri.get(pathConfig.getPath());
+        }
+    }
+
+    /**
+     * A resource of the client, as listed by the protection API.
+     */
+    @Value
+    public static class RemoteResource {
+        String id;
+        String name;
+        List<String> uris;
+    }
+}
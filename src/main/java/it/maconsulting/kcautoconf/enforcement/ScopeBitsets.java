@@ -0,0 +1,94 @@
+package it.maconsulting.kcautoconf.enforcement;
+
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.util.*;
+
+/**
+ * The scopes of the policy enforcer paths compiled into bitsets: each scope gets a bit index, and the scopes required
+ * by each method (or by each path, for the methods not requiring any) become a bitset, so that a requirement is
+ * checked against the scopes granted to a request with a few word operations.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+public class ScopeBitsets {
+
+    private final Map<String, Integer> scopeIndexes;
+    private final Map<Object, BitSet> requirements;
+    private final int pathCount;
+
+    private ScopeBitsets(Map<String, Integer> scopeIndexes, Map<Object, BitSet> requirements, int pathCount) {
+        this.scopeIndexes = scopeIndexes;
+        this.requirements = requirements;
+        this.pathCount = pathCount;
+    }
+
+    /**
+     * @param paths the policy enforcer paths
+     * @return the bitsets of the scopes required by the paths
+     */
+    public static ScopeBitsets compile(List<PolicyEnforcerConfig.PathConfig> paths) {
+        Map<String, Integer> scopeIndexes = new HashMap<>();
+        Map<Object, BitSet> requirements = new IdentityHashMap<>();
+        for (PolicyEnforcerConfig.PathConfig pathConfig : paths) {
+            compile(pathConfig, pathConfig.getScopes(), scopeIndexes, requirements);
+            for (PolicyEnforcerConfig.MethodConfig methodConfig : pathConfig.getMethods()) {
+                compile(methodConfig, methodConfig.getScopes(), scopeIndexes, requirements);
+            }
+        }
+        return new ScopeBitsets(scopeIndexes, requirements, paths.size());
+    }
+
+    private static void compile(Object owner, List<String> scopes, Map<String, Integer> scopeIndexes,
+                                Map<Object, BitSet> requirements) {
+        if (scopes == null || scopes.isEmpty() || requirements.containsKey(owner)) {
+            return;
+        }
+        BitSet requirement = new BitSet();
+        scopes.forEach(scope -> requirement.set(scopeIndexes.computeIfAbsent(scope, s -> scopeIndexes.size())));
+        requirements.put(owner, requirement);
+    }
+
+    /**
+     * @param target the enforcement configuration of a request
+     * @return the bitset of the scopes required by the target, or {@code null} if it requires none or it is not
+     * part of the compiled paths
+     */
+    public BitSet getRequirement(EnforcementTarget target) {
+        PolicyEnforcerConfig.MethodConfig methodConfig = target.getMethodConfig();
+        if (methodConfig != null && methodConfig.getScopes() != null && !methodConfig.getScopes().isEmpty()) {
+            return requirements.get(methodConfig);
+        }
+        return requirements.get(target.getPathConfig());
+    }
+
+    /**
+     * @param scopes the scopes granted to a request
+     * @return the bitset of the granted scopes; the scopes not required by any path are ignored
+     */
+    public BitSet toBitSet(Collection<String> scopes) {
+        BitSet granted = new BitSet(scopeIndexes.size());
+        scopes.forEach(scope -> {
+            Integer index = scopeIndexes.get(scope);
+            if (index != null) {
+                granted.set(index);
+            }
+        });
+        return granted;
+    }
+
+    /**
+     * @return the number of distinct scopes
+     */
+    public int size() {
+        return scopeIndexes.size();
+    }
+
+    /**
+     * @return the number of paths the bitsets have been compiled from
+     */
+    public int getPathCount() {
+        return pathCount;
+    }
+}
@@ -0,0 +1,205 @@
+package it.maconsulting.kcautoconf.enforcement;
+
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.adapters.config.AdapterConfig;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asks the Keycloak token endpoint for the authorization decision, with an UMA grant in {@code decision}
+ * response mode. The resource is identified by the {@code id} of the path, if known, or by its name. A path with
+ * neither is denied without asking Keycloak, whatever its scopes: a permission without a resource, or no permission
+ * at all, would be granted by any resource the token has a permission on.<br>
+ * At most {@code maxInFlight} decision requests are sent at the same time, so that a slow token endpoint cannot pile
+ * up work on the client: beyond that, a request waits up to {@code inFlightWait} for another one to complete, and
+ * then gives up with a {@link DecisionUnavailableException}, never with a denial.
+ * Only the {@code 200} and {@code 401}/{@code 403} answers are decisions: any failure in reaching Keycloak, or any
+ * other answer, raises a {@link DecisionUnavailableException}.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Slf4j
+public class UmaAuthorizationDecisionService implements AuthorizationDecisionService {
+
+    private static final String UMA_GRANT_TYPE = "urn:ietf:params:oauth:grant-type:uma-ticket";
+
+    private final HttpClient httpClient;
+    private final URI tokenEndpoint;
+    private final String audience;
+    private final Duration timeout;
+    private final Semaphore inFlight;
+    private final long inFlightWait;
+
+    /**
+     * @param adapterConfig the keycloak adapter configuration, providing the server url, the realm and the client
+     * @param httpClient    the client used to reach the token endpoint
+     * @param timeout       the timeout of each decision request
+     * @param maxInFlight   the maximum number of decision requests sent at the same time
+     * @param inFlightWait  the maximum time a decision request waits to be sent, when {@code maxInFlight} are
+     */
+    public UmaAuthorizationDecisionService(AdapterConfig adapterConfig, HttpClient httpClient, Duration timeout,
+                                           int maxInFlight, Duration inFlightWait) {
+        this(tokenEndpoint(adapterConfig), adapterConfig.getResource(), httpClient, timeout, maxInFlight, inFlightWait);
+    }
+
+    public UmaAuthorizationDecisionService(URI tokenEndpoint, String audience, HttpClient httpClient, Duration timeout) {
+        this(tokenEndpoint, audience, httpClient, timeout, Integer.MAX_VALUE, Duration.ZERO);
+    }
+
+    public UmaAuthorizationDecisionService(URI tokenEndpoint, String audience, HttpClient httpClient, Duration timeout,
+                                           int maxInFlight, Duration inFlightWait) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("The maximum number of decision requests in flight must be positive");
+        }
+        this.tokenEndpoint = tokenEndpoint;
+        this.audience = audience;
+        this.httpClient = httpClient;
+        this.timeout = timeout;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.inFlightWait = inFlightWait.toMillis();
+    }
+
+    @Override
+    public boolean isAuthorized(EnforcementRequest request) {
+        if (!hasPermission(request.getTarget())) {
+            return false;
+        }
+        acquire();
+        try {
+            HttpResponse<Void> response = httpClient.send(buildRequest(request), HttpResponse.BodyHandlers.discarding());
+            return isGranted(response.statusCode());
+        } catch (IOException e) {
+            throw unavailable(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw unavailable(e);
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Sends the decision request with the non-blocking client; the response is handled by the executor of the client.
+     */
+    @Override
+    public CompletableFuture<Boolean> isAuthorizedAsync(EnforcementRequest request) {
+        if (!hasPermission(request.getTarget())) {
+            return CompletableFuture.completedFuture(false);
+        }
+        try {
+            acquire();
+        } catch (DecisionUnavailableException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<HttpResponse<Void>> response;
+        try {
+            response = httpClient.sendAsync(buildRequest(request), HttpResponse.BodyHandlers.discarding());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        return response.handle((sent, error) -> {
+            inFlight.release();
+            if (error != null) {
+                throw unavailable(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            }
+            return isGranted(sent.statusCode());
+        });
+    }
+
+    /**
+     * Waits up to {@code inFlightWait} for one of the requests in flight to complete, if there are too many.
+     */
+    private void acquire() {
+        try {
+            if (inFlight.tryAcquire(inFlightWait, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.warn("Too many authorization decisions in flight to {}", tokenEndpoint);
+        throw new DecisionUnavailableException("Too many authorization decisions in flight to " + tokenEndpoint);
+    }
+
+    private DecisionUnavailableException unavailable(Throwable error) {
+        log.warn("Unable to get the authorization decision from {}: {}", tokenEndpoint, error.getMessage());
+        return new DecisionUnavailableException("Unable to get the authorization decision from " + tokenEndpoint, error);
+    }
+
+    protected HttpRequest buildRequest(EnforcementRequest request) {
+        return HttpRequest.newBuilder(tokenEndpoint)
+                .timeout(timeout)
+                .header("Authorization", "Bearer " + request.getToken())
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(buildForm(request.getTarget())))
+                .build();
+    }
+
+    /**
+     * @throws DecisionUnavailableException if the status is not a decision
+     */
+    protected boolean isGranted(int statusCode) {
+        if (statusCode == 200) {
+            return true;
+        }
+        if (statusCode == 401 || statusCode == 403) {
+            return false;
+        }
+        log.warn("Unexpected status {} from the token endpoint {}", statusCode, tokenEndpoint);
+        throw new DecisionUnavailableException("Unexpected status " + statusCode + " from the token endpoint " + tokenEndpoint);
+    }
+
+    private boolean hasPermission(EnforcementTarget target) {
+        if (getResource(target) == null) {
+            log.debug("The path {} has no resource, denying the request", target.getPathConfig().getPath());
+            return false;
+        }
+        return true;
+    }
+
+    private static String getResource(EnforcementTarget target) {
+        return target.getResourceId() != null ? target.getResourceId() : target.getPathConfig().getName();
+    }
+
+    private String buildForm(EnforcementTarget target) {
+        StringBuilder form = new StringBuilder()
+                .append("grant_type=").append(encode(UMA_GRANT_TYPE))
+                .append("&response_mode=decision");
+        if (audience != null) {
+            form.append("&audience=").append(encode(audience));
+        }
+        String resource = getResource(target);
+        List<String> scopes = target.getRequiredScopes();
+        if (scopes.isEmpty()) {
+            form.append("&permission=").append(encode(resource));
+        }
+        scopes.forEach(scope -> form.append("&permission=").append(encode(resource + "#" + scope)));
+        return form.toString();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static URI tokenEndpoint(AdapterConfig adapterConfig) {
+        String serverUrl = adapterConfig.getAuthServerUrl();
+        if (serverUrl.endsWith("/")) {
+            serverUrl = serverUrl.substring(0, serverUrl.length() - 1);
+        }
+        return URI.create(serverUrl + "/realms/" + encode(adapterConfig.getRealm()) + "/protocol/openid-connect/token");
+    }
+}
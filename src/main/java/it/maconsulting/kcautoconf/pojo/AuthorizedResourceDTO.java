@@ -2,16 +2,27 @@ package it.maconsulting.kcautoconf.pojo;
 
 import lombok.Data;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 
+/**
+ * A resource of the export. Its scopes and uris are kept in immutable, array-backed lists, without duplicates.
+ */
 @Data
 public class AuthorizedResourceDTO {
 
     private String name;
     private String displayName;
     private boolean ownerManagedAccess;
-    private Set<AuthorizationScopeDTO> scopes = new HashSet<>();
-    private Set<String> uris = new HashSet<>();
+    private List<AuthorizationScopeDTO> scopes = List.of();
+    private List<String> uris = List.of();
 
+    public void setScopes(Collection<AuthorizationScopeDTO> scopes) {
+        this.scopes = List.copyOf(new LinkedHashSet<>(scopes));
+    }
+
+    public void setUris(Collection<String> uris) {
+        this.uris = List.copyOf(new LinkedHashSet<>(uris));
+    }
 }
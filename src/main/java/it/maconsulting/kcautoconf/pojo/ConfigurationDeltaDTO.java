@@ -0,0 +1,24 @@
+package it.maconsulting.kcautoconf.pojo;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ConfigurationDeltaDTO {
+    /**
+     * The version of the configuration the delta has been computed from.
+     */
+    private String baseVersion;
+    /**
+     * The version of the current configuration.
+     */
+    private String version;
+
+    private List<AuthorizedResourceDTO> addedResources = new ArrayList<>();
+    private List<AuthorizedResourceDTO> modifiedResources = new ArrayList<>();
+    private List<String> removedResources = new ArrayList<>();
+    private List<AuthorizationScopeDTO> addedScopes = new ArrayList<>();
+    private List<AuthorizationScopeDTO> removedScopes = new ArrayList<>();
+}
@@ -2,7 +2,18 @@ package it.maconsulting.kcautoconf.pojo;
 
 import lombok.Data;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 @Data
 public class PolicyDTO {
     private String name;
+    private String description;
+    private String type;
+    private String logic;
+    private String decisionStrategy;
+    /**
+     * As in the Keycloak export format, the list values (resources, scopes, applyPolicies) are JSON encoded arrays.
+     */
+    private Map<String, String> config = new LinkedHashMap<>();
 }
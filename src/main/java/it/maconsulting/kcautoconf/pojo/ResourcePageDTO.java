@@ -0,0 +1,15 @@
+package it.maconsulting.kcautoconf.pojo;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ResourcePageDTO {
+    private List<AuthorizedResourceDTO> resources = new ArrayList<>();
+    /**
+     * The cursor of the next page, {@code null} on the last page.
+     */
+    private String nextCursor;
+}
@@ -0,0 +1,356 @@
+package it.maconsulting.kcautoconf.processor;
+
+import it.maconsulting.kcautoconf.scan.PathInventory;
+import it.maconsulting.kcautoconf.utils.PathUtils;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+/**
+ * Compile-time counterpart of the {@link it.maconsulting.kcautoconf.services.AutoconfigurationService} scan.<br>
+ * It reads the Spring web mappings and the Swagger v2/v3 operation annotations of every
+ * {@code @RestController} and writes the {@link PathInventory#GENERATED_CLASS_NAME} class holding the same
+ * paths, methods and scopes the runtime scan would discover.<br>
+ * The processor is not registered as a service, so it must be enabled explicitly in the compiler configuration.
+ * The annotations are read through their mirrors, so neither Spring nor Swagger are needed on the processor path.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@SupportedAnnotationTypes(PathInventoryProcessor.REST_CONTROLLER)
+public class PathInventoryProcessor extends AbstractProcessor {
+
+    static final String REST_CONTROLLER = "org.springframework.web.bind.annotation.RestController";
+    private static final String WEB_ANNOTATIONS = "org.springframework.web.bind.annotation.";
+    private static final String REQUEST_MAPPING = WEB_ANNOTATIONS + "RequestMapping";
+    private static final String API_OPERATION = "io.swagger.annotations.ApiOperation";
+    private static final String OPERATION = "io.swagger.v3.oas.annotations.Operation";
+    private static final String SECURITY_REQUIREMENTS = "io.swagger.v3.oas.annotations.security.SecurityRequirements";
+    private static final String PUBLIC_ENDPOINT = "it.maconsulting.kcautoconf.annotations.PublicEndpoint";
+    private static final Map<String, String> VERB_MAPPINGS = Map.of(
+            WEB_ANNOTATIONS + "GetMapping", "GET",
+            WEB_ANNOTATIONS + "PostMapping", "POST",
+            WEB_ANNOTATIONS + "PutMapping", "PUT",
+            WEB_ANNOTATIONS + "DeleteMapping", "DELETE",
+            WEB_ANNOTATIONS + "PatchMapping", "PATCH");
+    private static final int PATHS_PER_METHOD = 200;
+
+    private boolean generated;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement restController = processingEnv.getElementUtils().getTypeElement(REST_CONTROLLER);
+        if (restController == null || roundEnv.processingOver()) {
+            return false;
+        }
+        List<TypeElement> controllers = new ArrayList<>(ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(restController)));
+        controllers.sort(Comparator.comparing(controller -> controller.getQualifiedName().toString()));
+        if (controllers.isEmpty()) {
+            return false;
+        }
+        if (generated) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Controllers generated after the first round are not part of the path inventory: " + controllers);
+            return false;
+        }
+        generated = true;
+        writeInventory(scan(controllers));
+        return false;
+    }
+
+    private Map<String, InventoryPath> scan(List<TypeElement> controllers) {
+        String operationAnnotation = getOperationAnnotation();
+        Map<String, InventoryPath> inventory = new LinkedHashMap<>();
+        for (TypeElement controller : controllers) {
+            List<String> classPaths = getPaths(findAnnotation(controller, REQUEST_MAPPING));
+            if (classPaths.isEmpty()) {
+                classPaths = List.of("");
+            }
+            for (ExecutableElement method : ElementFilter.methodsIn(controller.getEnclosedElements())) {
+                List<String> verbs = new ArrayList<>();
+                List<String> methodPaths = List.of("");
+                for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+                    String type = typeName(mirror);
+                    if (REQUEST_MAPPING.equals(type)) {
+                        verbs.addAll(getEnumNames(mirror, "method"));
+                    } else if (VERB_MAPPINGS.containsKey(type)) {
+                        verbs.add(VERB_MAPPINGS.get(type));
+                    } else {
+                        continue;
+                    }
+                    List<String> paths = getPaths(mirror);
+                    if (!paths.isEmpty()) {
+                        methodPaths = paths;
+                    }
+                }
+                if (verbs.isEmpty()) {
+                    continue;
+                }
+                String name = null;
+                List<String> scopes = List.of();
+                if (operationAnnotation != null) {
+                    AnnotationMirror operation = findAnnotation(method, operationAnnotation);
+                    name = getName(method, operation, OPERATION.equals(operationAnnotation) ? "operationId" : "nickname");
+                    scopes = OPERATION.equals(operationAnnotation) ? getV3Scopes(operation) : getV2Scopes(operation);
+                }
+                boolean publicEndpoint = isPublic(controller, method, OPERATION.equals(operationAnnotation));
+                for (String classPath : classPaths) {
+                    for (String verb : verbs) {
+                        for (String methodPath : methodPaths) {
+                            String path = PathUtils.buildHttpPath(classPath, methodPath);
+                            InventoryPath existing = inventory.get(path);
+                            if (existing != null) {
+                                existing.disabled &= publicEndpoint;
+                                if (operationAnnotation != null) {
+                                    existing.methods.add(new InventoryMethod(verb, scopes));
+                                }
+                            } else {
+                                InventoryPath inventoryPath = new InventoryPath(path, name, publicEndpoint);
+                                if (operationAnnotation != null) {
+                                    inventoryPath.methods.add(new InventoryMethod(verb, scopes));
+                                }
+                                inventory.put(path, inventoryPath);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return inventory;
+    }
+
+    /**
+     * Mirrors the runtime lookup of the first available {@code SwaggerOperationService}: the v3 annotations are
+     * preferred over the v2 ones, and no method configuration is produced if none of them is on the classpath.
+     */
+    private String getOperationAnnotation() {
+        if (processingEnv.getElementUtils().getTypeElement(OPERATION) != null) {
+            return OPERATION;
+        }
+        if (processingEnv.getElementUtils().getTypeElement(API_OPERATION) != null) {
+            return API_OPERATION;
+        }
+        return null;
+    }
+
+    /**
+     * Mirrors the runtime detection of the public endpoints: the {@code PublicEndpoint} marker on the method or on
+     * the controller, or an empty v3 {@code @SecurityRequirements} on the method or, if missing, on the controller.
+     */
+    private boolean isPublic(TypeElement controller, ExecutableElement method, boolean swaggerV3) {
+        if (findAnnotation(method, PUBLIC_ENDPOINT) != null || findAnnotation(controller, PUBLIC_ENDPOINT) != null) {
+            return true;
+        }
+        if (!swaggerV3) {
+            return false;
+        }
+        AnnotationMirror securityRequirements = findAnnotation(method, SECURITY_REQUIREMENTS);
+        if (securityRequirements == null) {
+            securityRequirements = findAnnotation(controller, SECURITY_REQUIREMENTS);
+        }
+        return securityRequirements != null && getValues(securityRequirements, "value").isEmpty();
+    }
+
+    private String getName(ExecutableElement method, AnnotationMirror operation, String attribute) {
+        Object name = operation != null ? getValue(operation, attribute) : null;
+        return name instanceof String && !((String) name).isEmpty() ? (String) name : method.getSimpleName().toString();
+    }
+
+    private List<String> getV3Scopes(AnnotationMirror operation) {
+        List<String> scopes = new ArrayList<>();
+        for (AnnotationMirror requirement : getAnnotations(operation, "security")) {
+            scopes.addAll(getStrings(requirement, "scopes"));
+        }
+        return scopes;
+    }
+
+    private List<String> getV2Scopes(AnnotationMirror operation) {
+        List<String> scopes = new ArrayList<>();
+        for (AnnotationMirror authorization : getAnnotations(operation, "authorizations")) {
+            for (AnnotationMirror scope : getAnnotations(authorization, "scopes")) {
+                Object value = getValue(scope, "scope");
+                if (value != null) {
+                    scopes.add((String) value);
+                }
+            }
+        }
+        return scopes;
+    }
+
+    private List<String> getPaths(AnnotationMirror mapping) {
+        if (mapping == null) {
+            return List.of();
+        }
+        List<String> paths = getStrings(mapping, "path");
+        return paths.isEmpty() ? getStrings(mapping, "value") : paths;
+    }
+
+    private AnnotationMirror findAnnotation(Element element, String type) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (type.equals(typeName(mirror))) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private String typeName(AnnotationMirror mirror) {
+        return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+
+    private Object getValue(AnnotationMirror mirror, String attribute) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(attribute)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Single element arrays can be written without braces, so the value is either a list of
+     * {@link AnnotationValue} or the bare value itself.
+     */
+    private List<Object> getValues(AnnotationMirror mirror, String attribute) {
+        Object value = getValue(mirror, attribute);
+        List<Object> values = new ArrayList<>();
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                values.add(((AnnotationValue) item).getValue());
+            }
+        } else if (value != null) {
+            values.add(value);
+        }
+        return values;
+    }
+
+    private List<String> getStrings(AnnotationMirror mirror, String attribute) {
+        List<String> strings = new ArrayList<>();
+        getValues(mirror, attribute).forEach(value -> strings.add((String) value));
+        return strings;
+    }
+
+    private List<String> getEnumNames(AnnotationMirror mirror, String attribute) {
+        List<String> names = new ArrayList<>();
+        getValues(mirror, attribute).forEach(value -> names.add(((VariableElement) value).getSimpleName().toString()));
+        return names;
+    }
+
+    private List<AnnotationMirror> getAnnotations(AnnotationMirror mirror, String attribute) {
+        List<AnnotationMirror> mirrors = new ArrayList<>();
+        if (mirror != null) {
+            getValues(mirror, attribute).forEach(value -> mirrors.add((AnnotationMirror) value));
+        }
+        return mirrors;
+    }
+
+    private void writeInventory(Map<String, InventoryPath> inventory) {
+        String className = PathInventory.GENERATED_CLASS_NAME;
+        int lastDot = className.lastIndexOf('.');
+        List<InventoryPath> paths = new ArrayList<>(inventory.values());
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(className);
+            try (PrintWriter out = new PrintWriter(file.openWriter())) {
+                out.println("package " + className.substring(0, lastDot) + ";");
+                out.println();
+                out.println("import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;");
+                out.println();
+                out.println("import java.util.ArrayList;");
+                out.println("import java.util.List;");
+                out.println();
+                out.println("@javax.annotation.processing.Generated(\"" + getClass().getName() + "\")");
+                out.println("public final class " + className.substring(lastDot + 1)
+                        + " extends it.maconsulting.kcautoconf.scan.AbstractPathInventory {");
+                out.println();
+                out.println("    @Override");
+                out.println("    public List<PolicyEnforcerConfig.PathConfig> getPathConfigurations() {");
+                out.println("        List<PolicyEnforcerConfig.PathConfig> paths = new ArrayList<>(" + paths.size() + ");");
+                int chunks = (paths.size() + PATHS_PER_METHOD - 1) / PATHS_PER_METHOD;
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    out.println("        addPaths" + chunk + "(paths);");
+                }
+                out.println("        return paths;");
+                out.println("    }");
+                // the paths are split in several methods to stay below the bytecode size limit of a single method
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    out.println();
+                    out.println("    private static void addPaths" + chunk + "(List<PolicyEnforcerConfig.PathConfig> paths) {");
+                    paths.subList(chunk * PATHS_PER_METHOD, Math.min(paths.size(), (chunk + 1) * PATHS_PER_METHOD))
+                            .forEach(path -> out.println("        paths.add(" + path.toSource() + ");"));
+                    out.println("    }");
+                }
+                out.println("}");
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write the path inventory " + className + ": " + e.getMessage());
+        }
+    }
+
+    private static String literal(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static final class InventoryPath {
+        private final String path;
+        private final String name;
+        private final List<InventoryMethod> methods = new ArrayList<>();
+        private boolean disabled;
+
+        private InventoryPath(String path, String name, boolean disabled) {
+            this.path = path;
+            this.name = name;
+            this.disabled = disabled;
+        }
+
+        private String toSource() {
+            StringBuilder sb = new StringBuilder("path(").append(literal(path)).append(", ").append(literal(name));
+            methods.forEach(method -> sb.append(", ").append(method.toSource()));
+            sb.append(')');
+            return disabled ? "disabled(" + sb + ")" : sb.toString();
+        }
+    }
+
+    private static final class InventoryMethod {
+        private final String verb;
+        private final List<String> scopes;
+
+        private InventoryMethod(String verb, List<String> scopes) {
+            this.verb = verb;
+            this.scopes = scopes;
+        }
+
+        private String toSource() {
+            StringBuilder sb = new StringBuilder("method(").append(literal(verb));
+            scopes.forEach(scope -> sb.append(", ").append(literal(scope)));
+            return sb.append(')').toString();
+        }
+    }
+}
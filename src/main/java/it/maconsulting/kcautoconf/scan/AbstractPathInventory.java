@@ -0,0 +1,38 @@
+package it.maconsulting.kcautoconf.scan;
+
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Base class of the generated {@link PathInventory}, providing the factory methods used by the generated code.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+public abstract class AbstractPathInventory implements PathInventory {
+
+    protected static PolicyEnforcerConfig.PathConfig path(String path, String name,
+                                                         PolicyEnforcerConfig.MethodConfig... methods) {
+        PolicyEnforcerConfig.PathConfig pathConfig = new PolicyEnforcerConfig.PathConfig();
+        pathConfig.setPath(path);
+        pathConfig.setName(name);
+        pathConfig.setMethods(new ArrayList<>(Arrays.asList(methods)));
+        return pathConfig;
+    }
+
+    protected static PolicyEnforcerConfig.PathConfig disabled(PolicyEnforcerConfig.PathConfig pathConfig) {
+        pathConfig.setEnforcementMode(PolicyEnforcerConfig.EnforcementMode.DISABLED);
+        return pathConfig;
+    }
+
+    protected static PolicyEnforcerConfig.MethodConfig method(String verb, String... scopes) {
+        PolicyEnforcerConfig.MethodConfig methodConfig = new PolicyEnforcerConfig.MethodConfig();
+        methodConfig.setMethod(verb);
+        if (scopes.length > 0) {
+            methodConfig.setScopes(new ArrayList<>(Arrays.asList(scopes)));
+        }
+        return methodConfig;
+    }
+}
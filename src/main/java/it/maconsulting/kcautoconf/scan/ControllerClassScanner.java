@@ -0,0 +1,147 @@
+package it.maconsulting.kcautoconf.scan;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.index.CandidateComponentsIndex;
+import org.springframework.context.index.CandidateComponentsIndexLoader;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the {@code @RestController} classes to be scanned, according to a {@link ControllerDiscoveryMode}.<br>
+ * The include and exclude package filters are applied to the class names before any class is loaded, so that only
+ * the relevant packages of a large application are considered.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Slf4j
+public class ControllerClassScanner {
+
+    private final ApplicationContext context;
+    private final List<String> includePackages;
+    private final List<String> excludePackages;
+
+    public ControllerClassScanner(ApplicationContext context, String[] includePackages, String[] excludePackages) {
+        this.context = context;
+        this.includePackages = toPackageList(includePackages);
+        this.excludePackages = toPackageList(excludePackages);
+    }
+
+    /**
+     * @param mode the discovery strategy
+     * @return the controller classes, keyed by bean name
+     */
+    public Map<String, Class<?>> findControllerClasses(ControllerDiscoveryMode mode) {
+        switch (mode) {
+            case BEAN_DEFINITIONS:
+                return fromBeanDefinitions();
+            case COMPONENTS_INDEX:
+                return fromComponentsIndex();
+            default:
+                return fromBeans();
+        }
+    }
+
+    private Map<String, Class<?>> fromBeans() {
+        Map<String, Class<?>> controllers = new LinkedHashMap<>();
+        context.getBeansWithAnnotation(RestController.class).forEach((name, bean) -> {
+            Class<?> targetClass = AopUtils.getTargetClass(bean);
+            if (isIncluded(targetClass.getName())) {
+                controllers.put(name, targetClass);
+            }
+        });
+        return controllers;
+    }
+
+    private Map<String, Class<?>> fromBeanDefinitions() {
+        if (!(context instanceof ConfigurableApplicationContext)) {
+            log.warn("Bean definitions are not available, controllers are looked up as beans");
+            return fromBeans();
+        }
+        ConfigurableListableBeanFactory beanFactory = ((ConfigurableApplicationContext) context).getBeanFactory();
+        Map<String, Class<?>> controllers = new LinkedHashMap<>();
+        for (String name : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(name);
+            if (definition.isAbstract()) {
+                continue;
+            }
+            if (definition instanceof AnnotatedBeanDefinition) {
+                String className = ((AnnotatedBeanDefinition) definition).getMetadata().getClassName();
+                if (((AnnotatedBeanDefinition) definition).getMetadata().isAnnotated(RestController.class.getName())
+                        && isIncluded(className)) {
+                    addController(controllers, name, className);
+                }
+            } else {
+                // no metadata available: the type is predicted without initializing factory beans
+                Class<?> type = beanFactory.getType(name, false);
+                if (type != null && isIncluded(type.getName())
+                        && AnnotatedElementUtils.hasAnnotation(type, RestController.class)) {
+                    controllers.putIfAbsent(name, ClassUtils.getUserClass(type));
+                }
+            }
+        }
+        return controllers;
+    }
+
+    private Map<String, Class<?>> fromComponentsIndex() {
+        CandidateComponentsIndex index = CandidateComponentsIndexLoader.loadIndex(context.getClassLoader());
+        if (index == null) {
+            log.warn("No META-INF/spring.components index found, controllers are read from the bean definitions");
+            return fromBeanDefinitions();
+        }
+        MetadataReaderFactory metadataReaderFactory = new CachingMetadataReaderFactory(context.getClassLoader());
+        Map<String, Class<?>> controllers = new LinkedHashMap<>();
+        for (String className : index.getCandidateTypes("", Component.class.getName())) {
+            if (!isIncluded(className)) {
+                continue;
+            }
+            try {
+                if (metadataReaderFactory.getMetadataReader(className).getAnnotationMetadata()
+                        .isAnnotated(RestController.class.getName())) {
+                    addController(controllers, className, className);
+                }
+            } catch (IOException e) {
+                log.warn("Unable to read the metadata of indexed component {}", className, e);
+            }
+        }
+        return controllers;
+    }
+
+    private void addController(Map<String, Class<?>> controllers, String name, String className) {
+        try {
+            controllers.putIfAbsent(name, ClassUtils.forName(className, context.getClassLoader()));
+        } catch (ClassNotFoundException | LinkageError e) {
+            log.warn("Unable to load controller class {}", className, e);
+        }
+    }
+
+    public boolean isIncluded(String className) {
+        return (includePackages.isEmpty() || includePackages.stream().anyMatch(pkg -> isInPackage(className, pkg)))
+                && excludePackages.stream().noneMatch(pkg -> isInPackage(className, pkg));
+    }
+
+    private static boolean isInPackage(String className, String pkg) {
+        return className.startsWith(pkg + ".");
+    }
+
+    private static List<String> toPackageList(String[] packages) {
+        return Arrays.stream(packages).map(String::trim).filter(pkg -> !pkg.isEmpty()).collect(Collectors.toList());
+    }
+}
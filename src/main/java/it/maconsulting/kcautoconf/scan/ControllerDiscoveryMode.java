@@ -0,0 +1,28 @@
+package it.maconsulting.kcautoconf.scan;
+
+/**
+ * The strategies available to find the controllers to scan.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+public enum ControllerDiscoveryMode {
+    /**
+     * Looks up the {@code @RestController} beans. It forces the creation of every controller.
+     */
+    BEANS,
+    /**
+     * Reads the controller classes from the registered bean definitions, without creating the beans.
+     */
+    BEAN_DEFINITIONS,
+    /**
+     * Reads the controller classes from the {@code META-INF/spring.components} index, falling back to the bean
+     * definitions when the index is not available.
+     */
+    COMPONENTS_INDEX,
+    /**
+     * Reads the endpoints already detected by the Spring MVC {@code RequestMappingHandlerMapping}, including the
+     * mappings inherited from interfaces and superclasses.
+     */
+    HANDLER_MAPPING
+}
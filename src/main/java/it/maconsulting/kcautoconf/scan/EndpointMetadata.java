@@ -0,0 +1,30 @@
+package it.maconsulting.kcautoconf.scan;
+
+import lombok.Value;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * The annotations of a handler method, resolved once and then expanded into one policy enforcement path per
+ * class path, http verb and method path.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Value
+public class EndpointMetadata {
+    Method method;
+    /**
+     * The resource name, {@code null} when no {@code SwaggerOperationService} is available.
+     */
+    String name;
+    List<String> scopes;
+    List<RequestMethod> httpMethods;
+    List<String> paths;
+    /**
+     * True if the endpoint is declared public, and its paths are not enforced.
+     */
+    boolean publicEndpoint;
+}
@@ -0,0 +1,53 @@
+package it.maconsulting.kcautoconf.scan;
+
+import it.maconsulting.kcautoconf.enforcement.HandlerMethodRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the endpoints of the {@code @RestController} beans from the Spring MVC {@link RequestMappingHandlerMapping}s,
+ * which have already resolved the mappings of every handler method, including the ones declared on interfaces and
+ * superclasses.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Slf4j
+public class HandlerMappingScanner {
+
+    private final ApplicationContext context;
+    private final ControllerClassScanner controllerClassScanner;
+
+    public HandlerMappingScanner(ApplicationContext context, ControllerClassScanner controllerClassScanner) {
+        this.context = context;
+        this.controllerClassScanner = controllerClassScanner;
+    }
+
+    /**
+     * @return the mapping info of every handler method, in registration order
+     */
+    public Map<Method, RequestMappingInfo> findHandlerMethods() {
+        Map<Method, RequestMappingInfo> handlerMethods = new LinkedHashMap<>();
+        Map<String, RequestMappingHandlerMapping> handlerMappings = context.getBeansOfType(RequestMappingHandlerMapping.class);
+        if (handlerMappings.isEmpty()) {
+            log.warn("No RequestMappingHandlerMapping found, no endpoint will be configured");
+        }
+        handlerMappings.values().forEach(handlerMapping -> handlerMapping.getHandlerMethods().forEach((info, handlerMethod) -> {
+            Class<?> beanType = ClassUtils.getUserClass(handlerMethod.getBeanType());
+            if (AnnotatedElementUtils.hasAnnotation(beanType, RestController.class)
+                    && controllerClassScanner.isIncluded(beanType.getName())) {
+                handlerMethods.putIfAbsent(HandlerMethodRegistry.getUserMethod(handlerMethod), info);
+            }
+        }));
+        return handlerMethods;
+    }
+}
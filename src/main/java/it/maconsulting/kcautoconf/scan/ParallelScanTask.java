@@ -0,0 +1,46 @@
+package it.maconsulting.kcautoconf.scan;
+
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Fork/join task scanning a list of units (controllers or handler methods) in parallel.<br>
+ * The fragments produced by the workers are joined in the same order as the units, so that the result does not
+ * depend on how the work has been scheduled.
+ *
+ * @param <T> the type of the scanned unit
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+public class ParallelScanTask<T> extends RecursiveTask<List<PolicyEnforcerConfig.PathConfig>> {
+
+    private final List<T> units;
+    private final Function<T, List<PolicyEnforcerConfig.PathConfig>> scanner;
+    private final int threshold;
+
+    public ParallelScanTask(List<T> units, Function<T, List<PolicyEnforcerConfig.PathConfig>> scanner, int threshold) {
+        this.units = units;
+        this.scanner = scanner;
+        this.threshold = Math.max(1, threshold);
+    }
+
+    @Override
+    protected List<PolicyEnforcerConfig.PathConfig> compute() {
+        if (units.size() <= threshold) {
+            List<PolicyEnforcerConfig.PathConfig> fragments = new ArrayList<>();
+            units.forEach(unit -> fragments.addAll(scanner.apply(unit)));
+            return fragments;
+        }
+        int middle = units.size() / 2;
+        ParallelScanTask<T> head = new ParallelScanTask<>(units.subList(0, middle), scanner, threshold);
+        ParallelScanTask<T> tail = new ParallelScanTask<>(units.subList(middle, units.size()), scanner, threshold);
+        tail.fork();
+        List<PolicyEnforcerConfig.PathConfig> fragments = head.compute();
+        fragments.addAll(tail.join());
+        return fragments;
+    }
+}
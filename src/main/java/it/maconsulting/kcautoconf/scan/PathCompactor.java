@@ -0,0 +1,181 @@
+package it.maconsulting.kcautoconf.scan;
+
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Collapses the scanned paths sharing a literal prefix into a single {@code /prefix/*} path, when all of them have
+ * the same name, enforcement mode and scopes per http verb.<br>
+ * A prefix is compacted only if the merge cannot change the resolution of any request: there must be at least two
+ * paths under it, and no other path (neither scanned nor configured elsewhere) may match the prefix itself or anything
+ * under it. A {@code /*} catch-all is only accepted if it has the same requirements as the merged paths, since the
+ * requests under the prefix not matching any of them used to fall through to it. The prefix path, if configured, is
+ * kept, since the exact match wins over the wildcard. Note that, without a catch-all, the requests under the prefix
+ * not matching any of the merged paths become subject to the merged requirements too.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+public class PathCompactor {
+
+    private static final String CATCH_ALL = "/*";
+
+    private final List<PolicyEnforcerConfig.PathConfig> otherPaths;
+    private final Map<String, String> replacedPaths = new HashMap<>();
+
+    /**
+     * @param otherPaths the paths configured outside the scan, that must not be shadowed; the collection is copied,
+     *                   so it can be a snapshot taken on another thread
+     */
+    public PathCompactor(Collection<PolicyEnforcerConfig.PathConfig> otherPaths) {
+        this.otherPaths = otherPaths.stream().filter(pathConfig -> pathConfig.getPath() != null).collect(Collectors.toList());
+    }
+
+    /**
+     * @param paths the scanned paths
+     * @return the compacted paths, each merged path taking the place of the first of its members
+     */
+    public List<PolicyEnforcerConfig.PathConfig> compact(List<PolicyEnforcerConfig.PathConfig> paths) {
+        Node root = new Node();
+        paths.stream().filter(pathConfig -> pathConfig.getPath() != null).forEach(pathConfig -> {
+            Node node = root;
+            for (String segment : segments(pathConfig.getPath())) {
+                node = node.children.computeIfAbsent(segment, key -> new Node());
+            }
+            node.pathConfigs.add(pathConfig);
+        });
+        Map<PolicyEnforcerConfig.PathConfig, PolicyEnforcerConfig.PathConfig> merged = new IdentityHashMap<>();
+        root.children.forEach((segment, child) -> findGroups(child, List.of(segment), paths, merged));
+
+        List<PolicyEnforcerConfig.PathConfig> compacted = new ArrayList<>(paths.size());
+        Set<PolicyEnforcerConfig.PathConfig> emitted = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (PolicyEnforcerConfig.PathConfig pathConfig : paths) {
+            PolicyEnforcerConfig.PathConfig target = merged.getOrDefault(pathConfig, pathConfig);
+            if (emitted.add(target)) {
+                compacted.add(target);
+            }
+        }
+        return compacted;
+    }
+
+    /**
+     * @return the original paths that have been merged, with the path of their merged configuration
+     */
+    public Map<String, String> getReplacedPaths() {
+        return replacedPaths;
+    }
+
+    private void findGroups(Node node, List<String> prefix, List<PolicyEnforcerConfig.PathConfig> paths,
+                            Map<PolicyEnforcerConfig.PathConfig, PolicyEnforcerConfig.PathConfig> merged) {
+        if (!isLiteral(prefix.get(prefix.size() - 1))) {
+            return;
+        }
+        List<PolicyEnforcerConfig.PathConfig> members = new ArrayList<>();
+        node.children.values().forEach(child -> child.collect(members));
+        if (members.size() > 1 && haveSameRequirements(members) && !isShadowing(prefix, members, paths)) {
+            PolicyEnforcerConfig.PathConfig mergedPath = merge(members.get(0), "/" + String.join("/", prefix) + CATCH_ALL);
+            members.forEach(member -> {
+                merged.put(member, mergedPath);
+                replacedPaths.put(member.getPath(), mergedPath.getPath());
+            });
+            return;
+        }
+        node.children.forEach((segment, child) -> {
+            List<String> childPrefix = new ArrayList<>(prefix);
+            childPrefix.add(segment);
+            findGroups(child, childPrefix, paths, merged);
+        });
+    }
+
+    private static boolean haveSameRequirements(List<PolicyEnforcerConfig.PathConfig> members) {
+        List<Object> requirements = requirements(members.get(0));
+        return members.stream().allMatch(member -> requirements.equals(requirements(member)));
+    }
+
+    private static List<Object> requirements(PolicyEnforcerConfig.PathConfig pathConfig) {
+        Map<String, List<Object>> methods = new TreeMap<>();
+        pathConfig.getMethods().forEach(methodConfig -> methods.put(methodConfig.getMethod(),
+                Arrays.asList(methodConfig.getScopes(), methodConfig.getScopesEnforcementMode())));
+        return Arrays.asList(pathConfig.getName(), pathConfig.getType(), pathConfig.getId(), pathConfig.getEnforcementMode(),
+                pathConfig.getScopes(), methods, pathConfig.getClaimInformationPointConfig());
+    }
+
+    /**
+     * @return true if any path other than the members could match the prefix or a path under it
+     */
+    private boolean isShadowing(List<String> prefix, List<PolicyEnforcerConfig.PathConfig> members,
+                                List<PolicyEnforcerConfig.PathConfig> paths) {
+        Set<PolicyEnforcerConfig.PathConfig> memberSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        memberSet.addAll(members);
+        for (PolicyEnforcerConfig.PathConfig pathConfig : paths) {
+            if (pathConfig.getPath() != null && !memberSet.contains(pathConfig) && isShadowing(pathConfig, prefix, members.get(0))) {
+                return true;
+            }
+        }
+        return otherPaths.stream().anyMatch(other -> isShadowing(other, prefix, members.get(0)));
+    }
+
+    private static boolean isShadowing(PolicyEnforcerConfig.PathConfig pathConfig, List<String> prefix,
+                                       PolicyEnforcerConfig.PathConfig member) {
+        String[] path = segments(pathConfig.getPath());
+        if (path.length == 1 && "*".equals(path[0])) {
+            return !requirements(pathConfig).equals(requirements(member));
+        }
+        return mayMatchUnder(path, prefix);
+    }
+
+    private static boolean mayMatchUnder(String[] path, List<String> prefix) {
+        boolean exact = path.length == prefix.size();
+        for (int i = 0; i < Math.min(path.length, prefix.size()); i++) {
+            String segment = path[i];
+            if ("*".equals(segment) && i == path.length - 1) {
+                return true;
+            }
+            if (isLiteral(segment)) {
+                if (!segment.equals(prefix.get(i))) {
+                    return false;
+                }
+            } else {
+                exact = false;
+            }
+        }
+        // the literal prefix path itself wins over the wildcard
+        return path.length > prefix.size() || (path.length == prefix.size() && !exact);
+    }
+
+    private static PolicyEnforcerConfig.PathConfig merge(PolicyEnforcerConfig.PathConfig member, String path) {
+        PolicyEnforcerConfig.PathConfig pathConfig = new PolicyEnforcerConfig.PathConfig();
+        pathConfig.setPath(path);
+        pathConfig.setName(member.getName());
+        pathConfig.setType(member.getType());
+        pathConfig.setEnforcementMode(member.getEnforcementMode());
+        pathConfig.setScopes(member.getScopes());
+        pathConfig.setClaimInformationPointConfig(member.getClaimInformationPointConfig());
+        pathConfig.setMethods(new ArrayList<>(member.getMethods()));
+        return pathConfig;
+    }
+
+    private static boolean isLiteral(String segment) {
+        return segment.indexOf('{') < 0 && segment.indexOf('*') < 0;
+    }
+
+    private static String[] segments(String path) {
+        String trimmed = path.startsWith("/") ? path.substring(1) : path;
+        if (trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("/");
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new LinkedHashMap<>();
+        private final List<PolicyEnforcerConfig.PathConfig> pathConfigs = new ArrayList<>(1);
+
+        private void collect(List<PolicyEnforcerConfig.PathConfig> collected) {
+            collected.addAll(pathConfigs);
+            children.values().forEach(child -> child.collect(collected));
+        }
+    }
+}
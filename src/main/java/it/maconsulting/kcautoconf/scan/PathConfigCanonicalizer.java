@@ -0,0 +1,134 @@
+package it.maconsulting.kcautoconf.scan;
+
+import lombok.Value;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.util.*;
+
+/**
+ * Shares the identical parts of the scanned paths: the http verbs and the scopes are interned, the identical scope
+ * lists are replaced by a single immutable list, and the identical method configurations by a single instance.<br>
+ * The shared {@link PolicyEnforcerConfig.MethodConfig} instances must not be modified afterwards.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+public class PathConfigCanonicalizer {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int REFERENCE = 4;
+
+    private final Map<String, String> strings = new HashMap<>();
+    private final Map<List<String>, List<String>> scopeLists = new HashMap<>();
+    private final Map<MethodKey, PolicyEnforcerConfig.MethodConfig> methodConfigs = new HashMap<>();
+
+    /**
+     * Canonicalizes the paths in place.
+     *
+     * @param paths the scanned paths
+     * @return the estimated retained size of the method configurations, before and after
+     */
+    public Report canonicalize(List<PolicyEnforcerConfig.PathConfig> paths) {
+        long sizeBefore = estimateSize(paths);
+        int methodCount = 0;
+        for (PolicyEnforcerConfig.PathConfig pathConfig : paths) {
+            if (pathConfig.getScopes() != null) {
+                pathConfig.setScopes(canonicalScopes(pathConfig.getScopes()));
+            }
+            if (pathConfig.getMethods() == null) {
+                continue;
+            }
+            List<PolicyEnforcerConfig.MethodConfig> methods = new ArrayList<>(pathConfig.getMethods().size());
+            for (PolicyEnforcerConfig.MethodConfig methodConfig : pathConfig.getMethods()) {
+                methods.add(canonicalMethod(methodConfig));
+                methodCount++;
+            }
+            pathConfig.setMethods(methods);
+        }
+        return new Report(methodCount, methodConfigs.size(), sizeBefore, estimateSize(paths));
+    }
+
+    private PolicyEnforcerConfig.MethodConfig canonicalMethod(PolicyEnforcerConfig.MethodConfig methodConfig) {
+        String verb = canonicalString(methodConfig.getMethod());
+        List<String> scopes = methodConfig.getScopes() != null ? canonicalScopes(methodConfig.getScopes()) : null;
+        return methodConfigs.computeIfAbsent(new MethodKey(verb, scopes, methodConfig.getScopesEnforcementMode()), key -> {
+            PolicyEnforcerConfig.MethodConfig shared = new PolicyEnforcerConfig.MethodConfig();
+            shared.setMethod(key.getVerb());
+            shared.setScopes(key.getScopes());
+            shared.setScopesEnforcementMode(key.getScopesEnforcementMode());
+            return shared;
+        });
+    }
+
+    private List<String> canonicalScopes(List<String> scopes) {
+        List<String> canonical = new ArrayList<>(scopes.size());
+        scopes.forEach(scope -> canonical.add(canonicalString(scope)));
+        return scopeLists.computeIfAbsent(canonical, List::copyOf);
+    }
+
+    private String canonicalString(String value) {
+        return value != null ? strings.computeIfAbsent(value, key -> key) : null;
+    }
+
+    /**
+     * A rough estimate of the heap retained by the method configurations and the scope lists of the paths,
+     * counting each distinct instance once, with compressed references.
+     */
+    static long estimateSize(List<PolicyEnforcerConfig.PathConfig> paths) {
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        long size = 0;
+        for (PolicyEnforcerConfig.PathConfig pathConfig : paths) {
+            size += listSize(pathConfig.getScopes(), visited);
+            List<PolicyEnforcerConfig.MethodConfig> methods = pathConfig.getMethods();
+            if (methods == null) {
+                continue;
+            }
+            size += align(OBJECT_HEADER + REFERENCE + Integer.BYTES) + align(16 + (long) REFERENCE * methods.size());
+            for (PolicyEnforcerConfig.MethodConfig methodConfig : methods) {
+                if (visited.add(methodConfig)) {
+                    size += align(OBJECT_HEADER + 3L * REFERENCE);
+                    size += stringSize(methodConfig.getMethod(), visited);
+                    size += listSize(methodConfig.getScopes(), visited);
+                }
+            }
+        }
+        return size;
+    }
+
+    private static long listSize(List<String> list, Set<Object> visited) {
+        if (list == null || !visited.add(list)) {
+            return 0;
+        }
+        long size = align(OBJECT_HEADER + REFERENCE + Integer.BYTES) + align(16 + (long) REFERENCE * list.size());
+        for (String value : list) {
+            size += stringSize(value, visited);
+        }
+        return size;
+    }
+
+    private static long stringSize(String value, Set<Object> visited) {
+        if (value == null || !visited.add(value)) {
+            return 0;
+        }
+        return align(OBJECT_HEADER + REFERENCE + Integer.BYTES + 2) + align(16L + value.length());
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    @Value
+    private static class MethodKey {
+        String verb;
+        List<String> scopes;
+        PolicyEnforcerConfig.ScopeEnforcementMode scopesEnforcementMode;
+    }
+
+    @Value
+    public static class Report {
+        int methodConfigs;
+        int sharedMethodConfigs;
+        long sizeBefore;
+        long sizeAfter;
+    }
+}
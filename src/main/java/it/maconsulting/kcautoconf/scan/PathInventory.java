@@ -0,0 +1,26 @@
+package it.maconsulting.kcautoconf.scan;
+
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.util.List;
+
+/**
+ * A pre-computed inventory of the policy enforcement paths.<br>
+ * The implementation named {@link #GENERATED_CLASS_NAME} is written at compile time by the
+ * {@link it.maconsulting.kcautoconf.processor.PathInventoryProcessor}; when it is found on the classpath, the
+ * reflection based scan of the controllers is skipped.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+public interface PathInventory {
+
+    String GENERATED_CLASS_NAME = "it.maconsulting.kcautoconf.generated.GeneratedPathInventory";
+
+    /**
+     * Builds a fresh copy of the inventoried paths, so that callers are free to modify it.
+     *
+     * @return the list of path configurations
+     */
+    List<PolicyEnforcerConfig.PathConfig> getPathConfigurations();
+}
@@ -0,0 +1,23 @@
+package it.maconsulting.kcautoconf.scan;
+
+/**
+ * How the scanned endpoints are grouped into Keycloak resources. The resource of an endpoint is the name of its
+ * policy enforcement path.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+public enum ResourceGranularity {
+    /**
+     * One resource per operation, named after the Swagger operation (the default).
+     */
+    PATH,
+    /**
+     * One resource per controller, named after the controller class.
+     */
+    CONTROLLER,
+    /**
+     * One resource per Swagger tag (the first one of the operation), falling back to the controller.
+     */
+    TAG
+}
@@ -0,0 +1,310 @@
+package it.maconsulting.kcautoconf.scan;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+import org.springframework.util.ClassUtils;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk cache of the path fragments produced by each controller, and of the paths bound to each of its handler
+ * methods, keyed by the fingerprint of the bytecode of the controller and of its supertypes.<br>
+ * The file is memory-mapped on load. Any problem reading it (missing file, different format or scanner, failed
+ * checksum) results in an empty cache, so that every controller is scanned again.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Slf4j
+public class ScanCache {
+
+    private static final int MAGIC = 0x4B434143;
+    private static final int FORMAT_VERSION = 3;
+
+    private final Path file;
+    private final String signature;
+
+    /**
+     * @param file      the cache file
+     * @param signature identifies the scanner configuration; a cache written with a different signature is ignored
+     */
+    public ScanCache(Path file, String signature) {
+        this.file = file;
+        this.signature = signature;
+    }
+
+    /**
+     * @return the cached entries keyed by controller class name, or an empty map if the cache is not usable
+     */
+    public Map<String, Entry> load() {
+        if (!Files.isRegularFile(file)) {
+            log.debug("No scan cache found at {}", file);
+            return new HashMap<>();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to read the scan cache {}, a full scan will be performed: {}", file, e.getMessage());
+            return new HashMap<>();
+        }
+    }
+
+    private Map<String, Entry> read(ByteBuffer buffer) {
+        if (buffer.remaining() < Long.BYTES + 2 * Integer.BYTES) {
+            throw new IllegalStateException("truncated file");
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(buffer.limit() - Long.BYTES);
+        crc.update(payload);
+        if (crc.getValue() != buffer.getLong(buffer.limit() - Long.BYTES)) {
+            throw new IllegalStateException("checksum mismatch");
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            throw new IllegalStateException("unknown format");
+        }
+        Map<String, Entry> entries = new HashMap<>();
+        if (!signature.equals(readString(buffer))) {
+            log.info("The scan cache {} was written by a different scanner configuration, ignoring it", file);
+            return entries;
+        }
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            String className = readString(buffer);
+            String fingerprint = readString(buffer);
+            int fragmentCount = buffer.getInt();
+            List<PolicyEnforcerConfig.PathConfig> fragments = new ArrayList<>(fragmentCount);
+            for (int j = 0; j < fragmentCount; j++) {
+                PolicyEnforcerConfig.PathConfig pathConfig = new PolicyEnforcerConfig.PathConfig();
+                pathConfig.setPath(readString(buffer));
+                pathConfig.setName(readString(buffer));
+                String enforcementMode = readString(buffer);
+                if (enforcementMode != null) {
+                    pathConfig.setEnforcementMode(PolicyEnforcerConfig.EnforcementMode.valueOf(enforcementMode));
+                }
+                int methodCount = buffer.getInt();
+                for (int k = 0; k < methodCount; k++) {
+                    PolicyEnforcerConfig.MethodConfig methodConfig = new PolicyEnforcerConfig.MethodConfig();
+                    methodConfig.setMethod(readString(buffer));
+                    int scopeCount = buffer.getInt();
+                    List<String> scopes = new ArrayList<>(scopeCount);
+                    for (int l = 0; l < scopeCount; l++) {
+                        scopes.add(readString(buffer));
+                    }
+                    methodConfig.setScopes(scopes);
+                    pathConfig.getMethods().add(methodConfig);
+                }
+                fragments.add(pathConfig);
+            }
+            int handlerCount = buffer.getInt();
+            Map<String, List<String>> handlerPaths = new LinkedHashMap<>();
+            for (int j = 0; j < handlerCount; j++) {
+                String method = readString(buffer);
+                int pathCount = buffer.getInt();
+                List<String> paths = new ArrayList<>(pathCount);
+                for (int k = 0; k < pathCount; k++) {
+                    paths.add(readString(buffer));
+                }
+                handlerPaths.put(method, paths);
+            }
+            entries.put(className, new Entry(fingerprint, fragments, handlerPaths));
+        }
+        return entries;
+    }
+
+    /**
+     * Writes the entries to a temporary file, then moves it over the cache file.
+     *
+     * @param entries the entries keyed by controller class name
+     */
+    public void store(Map<String, Entry> entries) {
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, signature);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry : new TreeMap<>(entries).entrySet()) {
+                    writeString(out, entry.getKey());
+                    writeString(out, entry.getValue().getFingerprint());
+                    out.writeInt(entry.getValue().fragments.size());
+                    for (PolicyEnforcerConfig.PathConfig pathConfig : entry.getValue().fragments) {
+                        writeString(out, pathConfig.getPath());
+                        writeString(out, pathConfig.getName());
+                        writeString(out, pathConfig.getEnforcementMode() != null ? pathConfig.getEnforcementMode().name() : null);
+                        out.writeInt(pathConfig.getMethods().size());
+                        for (PolicyEnforcerConfig.MethodConfig methodConfig : pathConfig.getMethods()) {
+                            writeString(out, methodConfig.getMethod());
+                            out.writeInt(methodConfig.getScopes().size());
+                            for (String scope : methodConfig.getScopes()) {
+                                writeString(out, scope);
+                            }
+                        }
+                    }
+                    out.writeInt(entry.getValue().handlerPaths.size());
+                    for (Map.Entry<String, List<String>> handler : entry.getValue().handlerPaths.entrySet()) {
+                        writeString(out, handler.getKey());
+                        out.writeInt(handler.getValue().size());
+                        for (String path : handler.getValue()) {
+                            writeString(out, path);
+                        }
+                    }
+                }
+                CRC32 crc = new CRC32();
+                crc.update(bytes.toByteArray());
+                out.writeLong(crc.getValue());
+            }
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Scan cache written to {} with {} controllers", file, entries.size());
+        } catch (IOException e) {
+            log.warn("Unable to write the scan cache {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Computes the SHA-256 of the bytecode of a class, of its superclasses and of all its interfaces, since the
+     * mappings, names and scopes of a controller may be inherited from any of them. The JDK types are fingerprinted
+     * by name only.
+     *
+     * @param type the class
+     * @return the hex encoded fingerprint, or {@code null} if the bytecode is not readable
+     */
+    public static String fingerprint(Class<?> type) {
+        Set<Class<?>> types = new LinkedHashSet<>();
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            types.add(current);
+        }
+        types.addAll(ClassUtils.getAllInterfacesForClassAsSet(type));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Class<?> current : types) {
+                digest.update(current.getName().getBytes(StandardCharsets.UTF_8));
+                byte[] bytecode = bytecode(current);
+                if (bytecode != null) {
+                    digest.update(bytecode);
+                } else if (current.getClassLoader() != null) {
+                    return null;
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.debug("Unable to fingerprint {}: {}", type.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static byte[] bytecode(Class<?> type) throws IOException {
+        if (type.getClassLoader() == null) {
+            return null;
+        }
+        String resource = type.getName().substring(type.getName().lastIndexOf('.') + 1) + ".class";
+        try (InputStream in = type.getResourceAsStream(resource)) {
+            return in != null ? in.readAllBytes() : null;
+        }
+    }
+
+    /**
+     * @param method a handler method
+     * @return the key of the method among the ones declared by its class: its name and parameter types
+     */
+    public static String methodKey(Method method) {
+        StringJoiner key = new StringJoiner(",", method.getName() + "(", ")");
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            key.add(parameterType.getName());
+        }
+        return key.toString();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * The fragments of a controller, and the paths of its handler methods by {@link #methodKey(Method)}. The
+     * fragments are copied on the way in and on the way out, since the scan merges the methods of the fragments
+     * sharing the same path.
+     */
+    public static class Entry {
+        @Getter
+        private final String fingerprint;
+        private final List<PolicyEnforcerConfig.PathConfig> fragments;
+        @Getter
+        private final Map<String, List<String>> handlerPaths;
+
+        public Entry(String fingerprint, List<PolicyEnforcerConfig.PathConfig> fragments) {
+            this(fingerprint, fragments, Map.of());
+        }
+
+        public Entry(String fingerprint, List<PolicyEnforcerConfig.PathConfig> fragments, Map<String, List<String>> handlerPaths) {
+            this.fingerprint = fingerprint;
+            this.fragments = copy(fragments);
+            this.handlerPaths = Collections.unmodifiableMap(new TreeMap<>(handlerPaths));
+        }
+
+        public List<PolicyEnforcerConfig.PathConfig> getFragments() {
+            return copy(fragments);
+        }
+
+        private static List<PolicyEnforcerConfig.PathConfig> copy(List<PolicyEnforcerConfig.PathConfig> fragments) {
+            List<PolicyEnforcerConfig.PathConfig> copies = new ArrayList<>(fragments.size());
+            fragments.forEach(fragment -> {
+                PolicyEnforcerConfig.PathConfig pathConfig = new PolicyEnforcerConfig.PathConfig();
+                pathConfig.setPath(fragment.getPath());
+                pathConfig.setName(fragment.getName());
+                pathConfig.setEnforcementMode(fragment.getEnforcementMode());
+                fragment.getMethods().forEach(method -> {
+                    PolicyEnforcerConfig.MethodConfig methodConfig = new PolicyEnforcerConfig.MethodConfig();
+                    methodConfig.setMethod(method.getMethod());
+                    methodConfig.setScopes(method.getScopes());
+                    pathConfig.getMethods().add(methodConfig);
+                });
+                copies.add(pathConfig);
+            });
+            return copies;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package it.maconsulting.kcautoconf.scan;
+
+import it.maconsulting.kcautoconf.services.AutoconfigurationService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.SmartLifecycle;
+
+/**
+ * Publishes the paths of a background scan before the embedded web server starts accepting requests, and keeps
+ * the readiness state at {@link ReadinessState#REFUSING_TRAFFIC} while the scan is still running.<br>
+ * The gate is a no-op when the scan is synchronous.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Slf4j
+public class ScanReadinessGate implements SmartLifecycle, ApplicationListener<AvailabilityChangeEvent<ReadinessState>> {
+
+    /**
+     * Right before the phase of the embedded web server lifecycle.
+     */
+    public static final int PHASE = Integer.MAX_VALUE - 2;
+
+    private final AutoconfigurationService autoconfigurationService;
+    private volatile boolean running;
+
+    public ScanReadinessGate(AutoconfigurationService autoconfigurationService) {
+        this.autoconfigurationService = autoconfigurationService;
+    }
+
+    @Override
+    public void start() {
+        if (autoconfigurationService.isKeycloakConfigurationPending()) {
+            log.debug("Waiting for the background resources and scopes configuration");
+            autoconfigurationService.awaitKeycloakConfiguration();
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    @Override
+    public void onApplicationEvent(AvailabilityChangeEvent<ReadinessState> event) {
+        if (ReadinessState.ACCEPTING_TRAFFIC.equals(event.getState())
+                && autoconfigurationService.isKeycloakConfigurationPending()) {
+            log.info("Resources and scopes configuration still running, refusing traffic");
+            AvailabilityChangeEvent.publish(autoconfigurationService.getContext(), ReadinessState.REFUSING_TRAFFIC);
+        }
+    }
+}
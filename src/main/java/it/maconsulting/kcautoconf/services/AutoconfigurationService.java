@@ -1,23 +1,51 @@
 package it.maconsulting.kcautoconf.services;
 
+import it.maconsulting.kcautoconf.annotations.PublicEndpoint;
+import it.maconsulting.kcautoconf.enforcement.HandlerMethodRegistry;
+import it.maconsulting.kcautoconf.enforcement.PathConfigIndex;
+import it.maconsulting.kcautoconf.enforcement.ResourceIdResolver;
+import it.maconsulting.kcautoconf.enforcement.ScopeBitsets;
+import it.maconsulting.kcautoconf.scan.ControllerClassScanner;
+import it.maconsulting.kcautoconf.scan.ControllerDiscoveryMode;
+import it.maconsulting.kcautoconf.scan.EndpointMetadata;
+import it.maconsulting.kcautoconf.scan.HandlerMappingScanner;
+import it.maconsulting.kcautoconf.scan.ParallelScanTask;
+import it.maconsulting.kcautoconf.scan.PathCompactor;
+import it.maconsulting.kcautoconf.scan.PathConfigCanonicalizer;
+import it.maconsulting.kcautoconf.scan.PathInventory;
+import it.maconsulting.kcautoconf.scan.ResourceGranularity;
+import it.maconsulting.kcautoconf.scan.ScanCache;
+import it.maconsulting.kcautoconf.utils.PathUtils;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.keycloak.adapters.springboot.KeycloakSpringBootProperties;
 import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
-import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.ClassUtils;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
 
 import java.lang.reflect.Method;
+import java.net.http.HttpClient;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 
 @Slf4j
@@ -40,6 +68,76 @@ public class AutoconfigurationService {
     @Value("${kcautoconf.export-path-access-scope:configuration:export}")
     private String exportPathAccessScope;
 
+    @Value("${kcautoconf.scan.use-generated-inventory:true}")
+    private boolean useGeneratedInventory = true;
+
+    @Value("${kcautoconf.scan.discovery:BEANS}")
+    private ControllerDiscoveryMode discoveryMode = ControllerDiscoveryMode.BEANS;
+
+    @Value("${kcautoconf.scan.include-packages:}")
+    private String[] includePackages = {};
+
+    @Value("${kcautoconf.scan.exclude-packages:}")
+    private String[] excludePackages = {};
+
+    @Value("${kcautoconf.scan.parallelism:1}")
+    private int scanParallelism = 1;
+
+    @Value("${kcautoconf.scan.cache-file:}")
+    private String scanCacheFile = "";
+
+    @Value("${kcautoconf.scan.async:false}")
+    private boolean asyncScan;
+
+    @Value("${kcautoconf.scan.canonicalize:false}")
+    private boolean canonicalize;
+
+    @Value("${kcautoconf.scan.compact-paths:false}")
+    private boolean compactPaths;
+
+    @Value("${kcautoconf.resource-ids.resolve:false}")
+    private boolean resolveResourceIds;
+
+    @Value("${kcautoconf.resource-ids.page-size:500}")
+    private int resourceIdsPageSize = 500;
+
+    @Value("${kcautoconf.resource-ids.concurrency:4}")
+    private int resourceIdsConcurrency = 4;
+
+    @Value("${kcautoconf.resource-ids.timeout:10000}")
+    private long resourceIdsTimeout = 10000;
+
+    @Value("${kcautoconf.path-cache.auto-size:true}")
+    private boolean autoSizePathCache = true;
+
+    @Value("${kcautoconf.path-cache.headroom:0.5}")
+    private double pathCacheHeadroom = 0.5;
+
+    @Value("${kcautoconf.path-cache.warm-up:false}")
+    private boolean warmUp;
+
+    @Value("${kcautoconf.public-paths:}")
+    private String[] publicPaths = {};
+
+    @Value("${kcautoconf.resource-granularity:PATH}")
+    private ResourceGranularity resourceGranularity = ResourceGranularity.PATH;
+
+    private volatile CompletableFuture<List<PolicyEnforcerConfig.PathConfig>> pendingPathConfigurations;
+
+    private final AtomicLong configurationVersion = new AtomicLong();
+
+    private volatile PathConfigIndex pathConfigIndex;
+
+    private final Map<Method, List<String>> handlerMethodPaths = new ConcurrentHashMap<>();
+
+    private volatile HandlerMethodRegistry handlerMethodRegistry;
+
+    private volatile ScopeBitsets scopeBitsets;
+
+    private final Set<PolicyEnforcerConfig.PathConfig> resolvedIdPaths = ConcurrentHashMap.newKeySet();
+
+    private volatile PolicyEnforcerConfig detachedPolicyEnforcerConfig;
+
     @Autowired
     public AutoconfigurationService(ApplicationContext context, KeycloakSpringBootProperties keycloakSpringBootProperties, List<SwaggerOperationService> swaggerOperationServices) {
         this.context = context;
@@ -47,96 +145,520 @@ public class AutoconfigurationService {
         this.swaggerOperationServices = swaggerOperationServices;
     }
 
+    /**
+     * @return the policy enforcer configuration the paths are added to: the one of the adapter properties, or the one
+     * detached from them by {@link #detachPolicyEnforcerConfig()}
+     */
+    public PolicyEnforcerConfig getPolicyEnforcerConfig() {
+        PolicyEnforcerConfig detached = detachedPolicyEnforcerConfig;
+        return detached != null ? detached : keycloakSpringBootProperties.getPolicyEnforcerConfig();
+    }
+
+    /**
+     * Takes the policy enforcer configuration away from the adapter properties, so that the Keycloak adapter does not
+     * build a policy enforcer of its own: the paths, scanned before or after, are then enforced only by the
+     * {@link it.maconsulting.kcautoconf.enforcement.PolicyEnforcementInterceptor}, and are still exported.
+     */
+    public synchronized void detachPolicyEnforcerConfig() {
+        if (detachedPolicyEnforcerConfig != null) {
+            return;
+        }
+        PolicyEnforcerConfig policyEnforcerConfig = keycloakSpringBootProperties.getPolicyEnforcerConfig();
+        if (policyEnforcerConfig == null) {
+            policyEnforcerConfig = new PolicyEnforcerConfig();
+        }
+        detachedPolicyEnforcerConfig = policyEnforcerConfig;
+        keycloakSpringBootProperties.setPolicyEnforcerConfig(null);
+        log.info("Policy enforcer paths detached from the Keycloak adapter, they are enforced by the interceptor");
+    }
+
     public void updateKeycloakConfiguration() {
         log.info("Automatic resources and scopes configuration process started.");
-        keycloakSpringBootProperties.getPolicyEnforcerConfig().getPaths().addAll(getPathConfigurations());
+        addPathConfigurations(prepareConfiguration().get());
+        configurePathCache();
     }
 
-    private List<PolicyEnforcerConfig.PathConfig> getPathConfigurations() {
-        log.info("Automatic resources and scopes configuration process started.");
-        Map<String, PolicyEnforcerConfig.PathConfig> pathConfigMap = new HashMap<>();
-        Map<String, Object> beansWithAnnotation = context.getBeansWithAnnotation(RestController.class);
-
-        beansWithAnnotation.forEach((name, bean) -> {
-            final Class<?> targetClass = AopUtils.getTargetClass(bean);
-            final RequestMapping requestMappingAnnotation = AnnotationUtils.getAnnotation(targetClass, RequestMapping.class);
-            List<String> paths = getClassLevelAnnotatedPaths(requestMappingAnnotation);
-
-            log.debug("Parsing controller {}", name);
-            Arrays.asList(targetClass.getDeclaredMethods()).forEach(method -> {
-                final RequestMapping requestMappingOnMethod = AnnotationUtils.getAnnotation(method, RequestMapping.class);
-                if (requestMappingOnMethod != null) {
-                    log.trace("Found method: {}", method);
-                    List<String> methodPaths = extractExtraPathsFromClassMethod(requestMappingOnMethod, method);
-                    List<RequestMethod> httpMethods = Arrays.asList(requestMappingOnMethod.method());
-
-                    paths.forEach(path -> httpMethods.forEach(verb -> methodPaths.forEach(methodPath -> {
-                        String policyEnforcementPath = buildHttpPath(path, methodPath);
-                        log.debug("Configuring {} request for path: {}", verb, policyEnforcementPath);
-
-                        PolicyEnforcerConfig.PathConfig pathConfig = new PolicyEnforcerConfig.PathConfig();
-                        pathConfig.setPath(policyEnforcementPath);
-                        PolicyEnforcerConfig.MethodConfig methodConfig = new PolicyEnforcerConfig.MethodConfig();
-                        methodConfig.setMethod(verb.name());
-                        Optional<SwaggerOperationService> operationServiceOption = swaggerOperationServices.stream().findFirst();
-                        if (operationServiceOption.isPresent()) {
-                            SwaggerOperationService swaggerOperationService = operationServiceOption.get();
-                            List<String> scopes = swaggerOperationService.getScopes(method);
-                            if (!scopes.isEmpty()) {
-                                scopes.stream().filter(Predicate.not(String::isBlank))
-                                        .forEach(scope -> log.debug("Found authorization scope: {}", scope));
-                                methodConfig.setScopes(scopes);
-                            }
-                            pathConfig.getMethods().add(methodConfig);
-                            pathConfig.setName(swaggerOperationService.getName(method));
-                        }
-
-                        PolicyEnforcerConfig.PathConfig existingPath = pathConfigMap.get(pathConfig.getPath());
-
-                        if (existingPath != null && !pathConfig.getMethods().isEmpty()) {
-                            existingPath.getMethods().add(pathConfig.getMethods().get(0));
-                        } else {
-                            pathConfigMap.put(pathConfig.getPath(), pathConfig);
-                        }
-                    })));
+    /**
+     * Sizes the path cache of the policy enforcer on the number of paths plus {@code kcautoconf.path-cache.headroom}
+     * (a fraction of it), so that the matches of the known paths are not evicted. The cache is never shrunk below its
+     * configured, or default, size. With {@code kcautoconf.path-cache.warm-up} the path index, the handler method
+     * registry and the scope bitsets are built right away, so that the first requests do not pay for it.
+     */
+    private void configurePathCache() {
+        PolicyEnforcerConfig policyEnforcerConfig = getPolicyEnforcerConfig();
+        if (autoSizePathCache) {
+            PolicyEnforcerConfig.PathCacheConfig pathCacheConfig = policyEnforcerConfig.getPathCacheConfig();
+            if (pathCacheConfig == null) {
+                pathCacheConfig = new PolicyEnforcerConfig.PathCacheConfig();
+                policyEnforcerConfig.setPathCacheConfig(pathCacheConfig);
+            }
+            int pathCount = policyEnforcerConfig.getPaths().size();
+            int maxEntries = (int) Math.min(Integer.MAX_VALUE, (long) Math.ceil(pathCount * (1 + Math.max(0, pathCacheHeadroom))));
+            if (maxEntries > pathCacheConfig.getMaxEntries()) {
+                log.info("Sizing the policy enforcer path cache to {} entries for {} paths", maxEntries, pathCount);
+                pathCacheConfig.setMaxEntries(maxEntries);
+            }
+        }
+        if (warmUp) {
+            long start = System.nanoTime();
+            getPathConfigIndex();
+            getHandlerMethodRegistry();
+            getScopeBitsets();
+            log.info("Policy enforcer paths warmed up in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Adds the paths to the policy enforcer configuration, invalidating the derived structures.
+     */
+    private void addPathConfigurations(List<PolicyEnforcerConfig.PathConfig> pathConfigurations) {
+        getPolicyEnforcerConfig().getPaths().addAll(pathConfigurations);
+        pathConfigIndex = null;
+        handlerMethodRegistry = null;
+        scopeBitsets = null;
+        configurationVersion.incrementAndGet();
+    }
+
+    /**
+     * @param pathConfig a policy enforcer path
+     * @return whether the id of the path has been resolved from the resources of the Keycloak client, rather than
+     * configured; such a path is still exported
+     */
+    public boolean hasResolvedResourceId(PolicyEnforcerConfig.PathConfig pathConfig) {
+        return resolvedIdPaths.contains(pathConfig);
+    }
+
+    /**
+     * @return a counter incremented every time the paths of the policy enforcer configuration change
+     */
+    public long getConfigurationVersion() {
+        return configurationVersion.get();
+    }
+
+    /**
+     * Returns the index of the policy enforcer paths, compiling it on first use and whenever the paths change.
+     *
+     * @return the index of the current policy enforcer paths
+     */
+    public PathConfigIndex getPathConfigIndex() {
+        List<PolicyEnforcerConfig.PathConfig> paths = getPolicyEnforcerConfig().getPaths();
+        PathConfigIndex index = pathConfigIndex;
+        if (index == null || index.size() != paths.size()) {
+            index = PathConfigIndex.compile(new ArrayList<>(paths));
+            log.debug("Compiled the index of {} policy enforcer paths", index.size());
+            pathConfigIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the policy enforcer paths of the handler methods found by the reflection based scan, building the
+     * registry on first use and whenever the paths change. The paths read from the compile-time inventory are not
+     * bound to their handler methods.
+     *
+     * @return the registry of the current policy enforcer paths, by handler method
+     */
+    public HandlerMethodRegistry getHandlerMethodRegistry() {
+        List<PolicyEnforcerConfig.PathConfig> paths = getPolicyEnforcerConfig().getPaths();
+        HandlerMethodRegistry registry = handlerMethodRegistry;
+        if (registry == null || registry.getPathCount() != paths.size()) {
+            registry = HandlerMethodRegistry.build(handlerMethodPaths, new ArrayList<>(paths));
+            log.debug("Bound {} handler methods to their policy enforcer paths", registry.size());
+            handlerMethodRegistry = registry;
+        }
+        return registry;
+    }
+
+    /**
+     * Returns the scopes of the policy enforcer paths compiled into bitsets, compiling them on first use and whenever
+     * the paths change.
+     *
+     * @return the bitsets of the current policy enforcer paths
+     */
+    public ScopeBitsets getScopeBitsets() {
+        List<PolicyEnforcerConfig.PathConfig> paths = getPolicyEnforcerConfig().getPaths();
+        ScopeBitsets bitsets = scopeBitsets;
+        if (bitsets == null || bitsets.getPathCount() != paths.size()) {
+            bitsets = ScopeBitsets.compile(new ArrayList<>(paths));
+            log.debug("Compiled {} scopes into bitsets", bitsets.size());
+            scopeBitsets = bitsets;
+        }
+        return bitsets;
+    }
+
+    /**
+     * Starts the configuration process. When {@code kcautoconf.scan.async} is enabled, the controllers are
+     * discovered on the calling thread, while the scan runs on a background thread; the resulting paths are
+     * published by {@link #awaitKeycloakConfiguration()}, and the readiness state is held at
+     * {@link ReadinessState#REFUSING_TRAFFIC} until then.
+     */
+    public void startKeycloakConfiguration() {
+        if (!asyncScan) {
+            updateKeycloakConfiguration();
+            return;
+        }
+        log.info("Automatic resources and scopes configuration process started in background.");
+        Supplier<List<PolicyEnforcerConfig.PathConfig>> scan = prepareConfiguration();
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kcautoconf-scan");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pendingPathConfigurations = CompletableFuture.supplyAsync(scan, executor);
+        pendingPathConfigurations.whenComplete((paths, error) -> executor.shutdown());
+        AvailabilityChangeEvent.publish(context, ReadinessState.REFUSING_TRAFFIC);
+    }
+
+    /**
+     * @return true if a background scan has been started and its paths have not been published yet
+     */
+    public boolean isKeycloakConfigurationPending() {
+        return pendingPathConfigurations != null;
+    }
+
+    /**
+     * Waits for the background scan, if any, and publishes its paths in the policy enforcer configuration.
+     */
+    public synchronized void awaitKeycloakConfiguration() {
+        CompletableFuture<List<PolicyEnforcerConfig.PathConfig>> pending = pendingPathConfigurations;
+        if (pending == null) {
+            return;
+        }
+        try {
+            addPathConfigurations(pending.join());
+            configurePathCache();
+            log.info("Background resources and scopes configuration process completed.");
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Background resources and scopes configuration failed", e.getCause());
+        } finally {
+            pendingPathConfigurations = null;
+        }
+    }
+
+    private PathInventory getGeneratedPathInventory() {
+        ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+        if (!useGeneratedInventory || !ClassUtils.isPresent(PathInventory.GENERATED_CLASS_NAME, classLoader)) {
+            return null;
+        }
+        if (!ResourceGranularity.PATH.equals(resourceGranularity)) {
+            log.info("The compile-time path inventory names resources per path, ignoring it for {} granularity",
+                    resourceGranularity);
+            return null;
+        }
+        try {
+            return (PathInventory) ClassUtils.forName(PathInventory.GENERATED_CLASS_NAME, classLoader)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("Unable to load the compile-time path inventory, falling back to the controllers scan", e);
+            return null;
+        }
+    }
+
+    /**
+     * Prepares the scan on the calling thread.
+     *
+     * @return the scan, followed by the post-processing of the scanned paths
+     */
+    private Supplier<List<PolicyEnforcerConfig.PathConfig>> prepareConfiguration() {
+        Supplier<List<PolicyEnforcerConfig.PathConfig>> scan = prepareScan();
+        List<PolicyEnforcerConfig.PathConfig> otherPaths = compactPaths ?
+                new ArrayList<>(getPolicyEnforcerConfig().getPaths()) : List.of();
+        return () -> postProcess(scan.get(), otherPaths);
+    }
+
+    /**
+     * @param otherPaths the paths configured outside the scan, snapshotted on the thread preparing the scan
+     */
+    private List<PolicyEnforcerConfig.PathConfig> postProcess(List<PolicyEnforcerConfig.PathConfig> pathConfigurations,
+                                                              List<PolicyEnforcerConfig.PathConfig> otherPaths) {
+        if (compactPaths) {
+            pathConfigurations = compact(pathConfigurations, otherPaths);
+        }
+        if (canonicalize) {
+            PathConfigCanonicalizer.Report report = new PathConfigCanonicalizer().canonicalize(pathConfigurations);
+            log.info("Canonicalized {} method configurations into {} shared instances, estimated size {} -> {} bytes",
+                    report.getMethodConfigs(), report.getSharedMethodConfigs(), report.getSizeBefore(), report.getSizeAfter());
+        }
+        if (publicPaths.length > 0) {
+            disablePublicPaths(pathConfigurations);
+        }
+        if (resolveResourceIds) {
+            List<PolicyEnforcerConfig.PathConfig> withoutId = pathConfigurations.stream()
+                    .filter(pathConfig -> pathConfig.getId() == null).collect(Collectors.toList());
+            new ResourceIdResolver(keycloakSpringBootProperties, HttpClient.newHttpClient(),
+                    Duration.ofMillis(resourceIdsTimeout), resourceIdsPageSize, resourceIdsConcurrency)
+                    .resolve(pathConfigurations);
+            withoutId.stream().filter(pathConfig -> pathConfig.getId() != null).forEach(resolvedIdPaths::add);
+        }
+        return pathConfigurations;
+    }
+
+    /**
+     * Disables the enforcement of the paths matching one of the {@code kcautoconf.public-paths} Ant patterns.
+     */
+    private void disablePublicPaths(List<PolicyEnforcerConfig.PathConfig> pathConfigurations) {
+        AntPathMatcher matcher = new AntPathMatcher();
+        List<String> patterns = Arrays.stream(publicPaths).map(String::trim).filter(Predicate.not(String::isEmpty))
+                .collect(Collectors.toList());
+        pathConfigurations.stream()
+                .filter(pathConfig -> patterns.stream().anyMatch(pattern -> matcher.match(pattern, pathConfig.getPath())))
+                .forEach(pathConfig -> {
+                    log.debug("Disabling the enforcement of the public path {}", pathConfig.getPath());
+                    pathConfig.setEnforcementMode(PolicyEnforcerConfig.EnforcementMode.DISABLED);
+                });
+    }
+
+    /**
+     * Merges the scanned paths into {@code /prefix/*} paths where possible, without shadowing the paths configured
+     * in the application properties or the export path. The handler methods are bound to the merged paths.
+     */
+    private List<PolicyEnforcerConfig.PathConfig> compact(List<PolicyEnforcerConfig.PathConfig> pathConfigurations,
+                                                          List<PolicyEnforcerConfig.PathConfig> otherPaths) {
+        PolicyEnforcerConfig.PathConfig exportPathConfig = new PolicyEnforcerConfig.PathConfig();
+        exportPathConfig.setPath(exportPath);
+        List<PolicyEnforcerConfig.PathConfig> protectedPaths = new ArrayList<>(otherPaths);
+        protectedPaths.add(exportPathConfig);
+        PathCompactor compactor = new PathCompactor(protectedPaths);
+        List<PolicyEnforcerConfig.PathConfig> compacted = compactor.compact(pathConfigurations);
+        Map<String, String> replacedPaths = compactor.getReplacedPaths();
+        handlerMethodPaths.replaceAll((method, paths) -> paths.stream()
+                .map(path -> replacedPaths.getOrDefault(path, path)).distinct().collect(Collectors.toList()));
+        log.info("Path compaction: {} paths merged, {} paths left out of {}", replacedPaths.size(), compacted.size(), pathConfigurations.size());
+        return compacted;
+    }
+
+    /**
+     * Finds the units to be scanned, using the application context on the calling thread.
+     *
+     * @return the scan of the found units, which does not access the application context
+     */
+    private Supplier<List<PolicyEnforcerConfig.PathConfig>> prepareScan() {
+        PathInventory generatedInventory = getGeneratedPathInventory();
+        if (generatedInventory != null) {
+            log.info("Using the compile-time path inventory {}", PathInventory.GENERATED_CLASS_NAME);
+            return generatedInventory::getPathConfigurations;
+        }
+        SwaggerOperationService operationService = swaggerOperationServices.stream().findFirst().orElse(null);
+        ControllerClassScanner controllerClassScanner = new ControllerClassScanner(context, includePackages, excludePackages);
+
+        if (ControllerDiscoveryMode.HANDLER_MAPPING.equals(discoveryMode)) {
+            Map<Method, RequestMappingInfo> handlerMethods = new HandlerMappingScanner(context, controllerClassScanner).findHandlerMethods();
+            return () -> mergePathConfigurations(scan(new ArrayList<>(handlerMethods.entrySet()),
+                    handlerMethod -> scanHandlerMethod(handlerMethod.getKey(), handlerMethod.getValue(), operationService)));
+        }
+        Map<String, Class<?>> controllers = controllerClassScanner.findControllerClasses(discoveryMode);
+        if (scanCacheFile.isBlank()) {
+            return () -> mergePathConfigurations(scan(new ArrayList<>(controllers.entrySet()),
+                    controller -> scanController(controller.getKey(), controller.getValue(), operationService)));
+        }
+        return () -> mergePathConfigurations(scanWithCache(controllers, operationService));
+    }
+
+    /**
+     * Reuses the cached fragments of the controllers whose bytecode has not changed, and scans the others.
+     * The cache file is rewritten only if something has changed.
+     */
+    private List<PolicyEnforcerConfig.PathConfig> scanWithCache(Map<String, Class<?>> controllers, SwaggerOperationService operationService) {
+        String signature = (operationService != null ? ClassUtils.getUserClass(operationService).getName() : "none")
+                + "/" + resourceGranularity;
+        ScanCache scanCache = new ScanCache(Paths.get(scanCacheFile), signature);
+        Map<String, ScanCache.Entry> cachedEntries = scanCache.load();
+        Map<String, ScanCache.Entry> entries = new ConcurrentHashMap<>();
+        AtomicInteger hits = new AtomicInteger();
+
+        List<PolicyEnforcerConfig.PathConfig> fragments = scan(new ArrayList<>(controllers.entrySet()), controller -> {
+            Class<?> targetClass = controller.getValue();
+            String fingerprint = ScanCache.fingerprint(targetClass);
+            ScanCache.Entry cached = cachedEntries.get(targetClass.getName());
+            if (fingerprint != null && cached != null && fingerprint.equals(cached.getFingerprint())) {
+                log.trace("Reusing the cached paths of controller {}", controller.getKey());
+                hits.incrementAndGet();
+                entries.put(targetClass.getName(), cached);
+                bindCachedHandlerMethods(targetClass, cached.getHandlerPaths());
+                return cached.getFragments();
+            }
+            List<PolicyEnforcerConfig.PathConfig> scanned = scanController(controller.getKey(), targetClass, operationService);
+            if (fingerprint != null) {
+                Map<String, List<String>> handlerPaths = new HashMap<>();
+                for (Method method : targetClass.getDeclaredMethods()) {
+                    List<String> paths = handlerMethodPaths.get(method);
+                    if (paths != null) {
+                        handlerPaths.put(ScanCache.methodKey(method), paths);
+                    }
                 }
-            });
+                entries.put(targetClass.getName(), new ScanCache.Entry(fingerprint, scanned, handlerPaths));
+            }
+            return scanned;
         });
-        return new ArrayList<>(pathConfigMap.values());
+        log.info("Scan cache: {} controllers reused, {} scanned", hits.get(), controllers.size() - hits.get());
+        if (hits.get() != entries.size() || entries.size() != cachedEntries.size()) {
+            scanCache.store(entries);
+        }
+        return fragments;
     }
 
-    private List<String> getClassLevelAnnotatedPaths(RequestMapping requestMappingAnnotation) {
-        List<String> paths = new ArrayList<>();
-        paths.add("");
-        if (requestMappingAnnotation != null &&
-                requestMappingAnnotation.path().length > 0) {
-            paths = Arrays.asList(requestMappingAnnotation.path());
+    /**
+     * Binds the handler methods of a controller read from the scan cache to their paths, as the scan would.
+     */
+    private void bindCachedHandlerMethods(Class<?> targetClass, Map<String, List<String>> handlerPaths) {
+        if (handlerPaths.isEmpty()) {
+            return;
+        }
+        for (Method method : targetClass.getDeclaredMethods()) {
+            List<String> paths = handlerPaths.get(ScanCache.methodKey(method));
+            if (paths != null) {
+                bindHandlerMethod(method, paths);
+            }
         }
-        return paths;
     }
 
-    private String buildHttpPath(String... paths) {
-        StringBuilder sb = new StringBuilder();
-        for (String path : paths) {
-            if (!path.isEmpty()) {
-                sb.append(addLeadingSlash(path));
+    /**
+     * Scans the units serially or, when {@code kcautoconf.scan.parallelism} is greater than 1, in a dedicated
+     * {@link ForkJoinPool}. In both cases the fragments are returned in the order of the units.
+     */
+    private <T> List<PolicyEnforcerConfig.PathConfig> scan(List<T> units, Function<T, List<PolicyEnforcerConfig.PathConfig>> scanner) {
+        if (scanParallelism <= 1 || units.size() < 2) {
+            List<PolicyEnforcerConfig.PathConfig> fragments = new ArrayList<>();
+            units.forEach(unit -> fragments.addAll(scanner.apply(unit)));
+            return fragments;
+        }
+        log.debug("Scanning {} units with parallelism {}", units.size(), scanParallelism);
+        ForkJoinPool pool = new ForkJoinPool(scanParallelism);
+        try {
+            return pool.invoke(new ParallelScanTask<>(units, scanner, units.size() / (scanParallelism * 4)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private List<PolicyEnforcerConfig.PathConfig> scanController(String name, Class<?> targetClass, SwaggerOperationService operationService) {
+        final RequestMapping requestMappingAnnotation = AnnotationUtils.getAnnotation(targetClass, RequestMapping.class);
+        List<String> paths = getClassLevelAnnotatedPaths(requestMappingAnnotation);
+        List<PolicyEnforcerConfig.PathConfig> fragments = new ArrayList<>();
+
+        log.debug("Parsing controller {}", name);
+        for (Method method : targetClass.getDeclaredMethods()) {
+            final RequestMapping requestMappingOnMethod = AnnotatedElementUtils.getMergedAnnotation(method, RequestMapping.class);
+            if (requestMappingOnMethod != null) {
+                log.trace("Found method: {}", method);
+                List<String> methodPaths = requestMappingOnMethod.path().length > 0 ?
+                        Arrays.asList(requestMappingOnMethod.path()) : List.of("");
+                EndpointMetadata endpoint = resolveEndpoint(method, operationService,
+                        Arrays.asList(requestMappingOnMethod.method()), methodPaths);
+                configureEndpoint(endpoint, paths, fragments);
             }
         }
-        String path = addLeadingSlash(sb.toString());
-        return (path.length() > 1 && path.endsWith("/")) ? path.substring(0, path.lastIndexOf("/")) : path;
+        return fragments;
     }
 
-    private List<String> extractExtraPathsFromClassMethod(RequestMapping annotation, Method method) {
-        List<String> extraPaths = List.of("");
-        RequestMapping merged = AnnotatedElementUtils.getMergedAnnotation(method, RequestMapping.class);
-        if (merged != null && merged.path().length > 0) {
-            extraPaths = Arrays.asList(merged.path());
+    private List<PolicyEnforcerConfig.PathConfig> scanHandlerMethod(Method method, RequestMappingInfo info, SwaggerOperationService operationService) {
+        log.trace("Found handler method: {}", method);
+        List<String> patterns = new ArrayList<>(info.getPatternValues());
+        if (patterns.isEmpty()) {
+            patterns.add("");
         }
-        return extraPaths;
+        EndpointMetadata endpoint = resolveEndpoint(method, operationService,
+                List.copyOf(info.getMethodsCondition().getMethods()), patterns);
+        List<PolicyEnforcerConfig.PathConfig> fragments = new ArrayList<>();
+        configureEndpoint(endpoint, List.of(""), fragments);
+        return fragments;
+    }
+
+    /**
+     * Resolves the Swagger name and scopes of a handler method, once for all its paths and verbs.
+     */
+    private EndpointMetadata resolveEndpoint(Method method, SwaggerOperationService operationService,
+                                             List<RequestMethod> httpMethods, List<String> methodPaths) {
+        String name = null;
+        List<String> scopes = List.of();
+        if (operationService != null) {
+            scopes = List.copyOf(operationService.getScopes(method));
+            scopes.stream().filter(Predicate.not(String::isBlank))
+                    .forEach(scope -> log.debug("Found authorization scope: {}", scope));
+            name = operationService.getName(method);
+        }
+        boolean publicEndpoint = AnnotatedElementUtils.hasAnnotation(method, PublicEndpoint.class) ||
+                AnnotatedElementUtils.hasAnnotation(method.getDeclaringClass(), PublicEndpoint.class) ||
+                (operationService != null && operationService.isPublic(method));
+        if (ResourceGranularity.CONTROLLER.equals(resourceGranularity)) {
+            name = ClassUtils.getUserClass(method.getDeclaringClass()).getSimpleName();
+        } else if (ResourceGranularity.TAG.equals(resourceGranularity)) {
+            name = Optional.ofNullable(operationService).map(service -> service.getTags(method)).orElse(List.of())
+                    .stream().findFirst()
+                    .orElseGet(() -> ClassUtils.getUserClass(method.getDeclaringClass()).getSimpleName());
+        }
+        return new EndpointMetadata(method, name, scopes, httpMethods, methodPaths, publicEndpoint);
+    }
+
+    private void configureEndpoint(EndpointMetadata endpoint, List<String> paths,
+                                   List<PolicyEnforcerConfig.PathConfig> fragments) {
+        Set<String> policyEnforcementPaths = new LinkedHashSet<>();
+        paths.forEach(path -> endpoint.getHttpMethods().forEach(verb -> endpoint.getPaths().forEach(methodPath -> {
+            String policyEnforcementPath = PathUtils.buildHttpPath(path, methodPath);
+            log.debug("Configuring {} request for path: {}", verb, policyEnforcementPath);
+
+            PolicyEnforcerConfig.PathConfig pathConfig = new PolicyEnforcerConfig.PathConfig();
+            pathConfig.setPath(policyEnforcementPath);
+            if (endpoint.isPublicEndpoint()) {
+                pathConfig.setEnforcementMode(PolicyEnforcerConfig.EnforcementMode.DISABLED);
+            }
+            policyEnforcementPaths.add(policyEnforcementPath);
+            if (endpoint.getName() != null) {
+                PolicyEnforcerConfig.MethodConfig methodConfig = new PolicyEnforcerConfig.MethodConfig();
+                methodConfig.setMethod(verb.name());
+                if (!endpoint.getScopes().isEmpty()) {
+                    methodConfig.setScopes(endpoint.getScopes());
+                }
+                pathConfig.getMethods().add(methodConfig);
+                pathConfig.setName(endpoint.getName());
+            }
+            fragments.add(pathConfig);
+        })));
+        bindHandlerMethod(endpoint.getMethod(), policyEnforcementPaths);
+    }
+
+    private void bindHandlerMethod(Method method, Collection<String> policyEnforcementPaths) {
+        handlerMethodPaths.merge(method, List.copyOf(policyEnforcementPaths), (existing, added) -> {
+            Set<String> merged = new LinkedHashSet<>(existing);
+            merged.addAll(added);
+            return List.copyOf(merged);
+        });
     }
 
-    private String addLeadingSlash(String path) {
-        return !path.startsWith("/") ? "/" + path : path;
+    /**
+     * Merges the fragments sharing the same path, in order: the first fragment of each path is kept and the
+     * methods of the following ones are added to it. A path is left disabled only if all its fragments are. The
+     * paths are returned in the order of their first fragment, i.e. in the order of the scanned units, which the
+     * parallel scan preserves.
+     */
+    private List<PolicyEnforcerConfig.PathConfig> mergePathConfigurations(List<PolicyEnforcerConfig.PathConfig> fragments) {
+        Map<String, PolicyEnforcerConfig.PathConfig> pathConfigMap = new LinkedHashMap<>();
+        fragments.forEach(pathConfig -> {
+            PolicyEnforcerConfig.PathConfig existingPath = pathConfigMap.get(pathConfig.getPath());
+
+            if (existingPath == null) {
+                pathConfigMap.put(pathConfig.getPath(), pathConfig);
+                return;
+            }
+            if (existingPath.getEnforcementMode() != pathConfig.getEnforcementMode()) {
+                log.info("The path {} has both public and protected methods, it will be enforced", pathConfig.getPath());
+                existingPath.setEnforcementMode(PolicyEnforcerConfig.EnforcementMode.ENFORCING);
+            }
+            if (!pathConfig.getMethods().isEmpty()) {
+                existingPath.getMethods().add(pathConfig.getMethods().get(0));
+            }
+        });
+        return new ArrayList<>(pathConfigMap.values());
+    }
+
+    private List<String> getClassLevelAnnotatedPaths(RequestMapping requestMappingAnnotation) {
+        List<String> paths = new ArrayList<>();
+        paths.add("");
+        if (requestMappingAnnotation != null &&
+                requestMappingAnnotation.path().length > 0) {
+            paths = Arrays.asList(requestMappingAnnotation.path());
+        }
+        return paths;
     }
 
     public void enableConfigurationPage() {
@@ -149,7 +671,7 @@ public class AutoconfigurationService {
         } else {
             configurationPath.setEnforcementMode(PolicyEnforcerConfig.EnforcementMode.DISABLED);
         }
-        getKeycloakSpringBootProperties().getPolicyEnforcerConfig().getPaths().add(configurationPath);
+        addPathConfigurations(List.of(configurationPath));
         log.info("Configuration page enabled and available @ {}", exportPath);
 
     }
@@ -0,0 +1,20 @@
+package it.maconsulting.kcautoconf.services;
+
+import lombok.Value;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What is kept of a configuration version to compute the changes since it: the hash of each resource, by name (or
+ * uris, for the unnamed ones), and the names of the scopes. The resources themselves are not kept.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+@Value
+public class ConfigurationSnapshot {
+    String version;
+    Map<String, String> resourceHashes;
+    Set<String> scopes;
+}
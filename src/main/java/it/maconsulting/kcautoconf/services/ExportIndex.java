@@ -0,0 +1,166 @@
+package it.maconsulting.kcautoconf.services;
+
+import lombok.Value;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Index of the exported resources, to answer the filtered and paginated export queries without generating the whole
+ * export. The paths are grouped by resource as in the export (paths sharing the same name make a single resource), the
+ * resources are sorted by name, the unnamed ones after the named ones by path, and indexed by path, scope and http
+ * verb; a query walks the smallest of the matching sets, starting after its cursor, so that it costs about as much as
+ * the page it returns.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+public class ExportIndex {
+
+    private final NavigableMap<String, List<PolicyEnforcerConfig.PathConfig>> resources = new TreeMap<>();
+    private final NavigableMap<String, NavigableSet<String>> resourcesByPath = new TreeMap<>();
+    private final Map<String, NavigableSet<String>> resourcesByName = new HashMap<>();
+    private final Map<String, NavigableSet<String>> resourcesByScope = new HashMap<>();
+    private final Map<String, NavigableSet<String>> resourcesByMethod = new HashMap<>();
+
+    /**
+     * @param paths              the policy enforcer paths; as in the export, the disabled and the already existing
+     *                           ones are skipped
+     * @param resolvedResourceId tells the paths whose id has been resolved, rather than configured, which are exported
+     */
+    public ExportIndex(List<PolicyEnforcerConfig.PathConfig> paths, Predicate<PolicyEnforcerConfig.PathConfig> resolvedResourceId) {
+        JsonKeycloakConfigurationGenerator.groupByResource(paths, resolvedResourceId).forEach(group -> {
+            PolicyEnforcerConfig.PathConfig first = group.get(0);
+            String key = first.getName() != null ? "n" + first.getName() : "p" + first.getPath();
+            resources.put(key, group);
+            if (first.getName() != null) {
+                resourcesByName.computeIfAbsent(first.getName(), name -> new TreeSet<>()).add(key);
+            }
+            group.forEach(pathConfig -> {
+                if (pathConfig.getPath() != null) {
+                    resourcesByPath.computeIfAbsent(pathConfig.getPath(), path -> new TreeSet<>()).add(key);
+                }
+                pathConfig.getMethods().forEach(methodConfig -> {
+                    resourcesByMethod.computeIfAbsent(methodConfig.getMethod(), method -> new TreeSet<>()).add(key);
+                    methodConfig.getScopes().forEach(scope -> resourcesByScope.computeIfAbsent(scope, k -> new TreeSet<>()).add(key));
+                });
+            });
+        });
+    }
+
+    static boolean isExported(PolicyEnforcerConfig.PathConfig pathConfig, Predicate<PolicyEnforcerConfig.PathConfig> resolvedResourceId) {
+        return !PolicyEnforcerConfig.EnforcementMode.DISABLED.equals(pathConfig.getEnforcementMode()) &&
+                //skip existing pathconfigs, configured by id
+                (pathConfig.getId() == null || resolvedResourceId.test(pathConfig));
+    }
+
+    /**
+     * @param query the filters and the page to return
+     * @return the paths of the matching resources of the page, in resource order, and the cursor of the next page,
+     * if any
+     */
+    public Page query(Query query) {
+        Iterator<String> candidates = candidates(query).iterator();
+        List<List<PolicyEnforcerConfig.PathConfig>> results = new ArrayList<>();
+        String lastKey = null;
+        while (candidates.hasNext()) {
+            String key = candidates.next();
+            List<PolicyEnforcerConfig.PathConfig> resource = resources.get(key);
+            if (!matches(resource, query)) {
+                continue;
+            }
+            if (results.size() >= query.getLimit()) {
+                return new Page(results, encodeCursor(lastKey));
+            }
+            results.add(resource);
+            lastKey = key;
+        }
+        return new Page(results, null);
+    }
+
+    /**
+     * @return the sorted resource keys following the cursor, taken from the smallest of the sets selected by the
+     * filters
+     */
+    private NavigableSet<String> candidates(Query query) {
+        NavigableSet<String> candidates = resources.navigableKeySet();
+        if (query.getPathPrefix() != null && !query.getPathPrefix().isEmpty()) {
+            NavigableSet<String> underPrefix = new TreeSet<>();
+            resourcesByPath.subMap(query.getPathPrefix(), true, query.getPathPrefix() + Character.MAX_VALUE, false)
+                    .values().forEach(underPrefix::addAll);
+            candidates = underPrefix;
+        }
+        candidates = smallest(candidates, query.getName(), resourcesByName);
+        candidates = smallest(candidates, query.getScope(), resourcesByScope);
+        candidates = smallest(candidates, query.getMethod(), resourcesByMethod);
+        String cursor = decodeCursor(query.getCursor());
+        return cursor != null ? candidates.tailSet(cursor, false) : candidates;
+    }
+
+    private static NavigableSet<String> smallest(NavigableSet<String> candidates, String key, Map<String, NavigableSet<String>> index) {
+        if (key == null) {
+            return candidates;
+        }
+        NavigableSet<String> indexed = index.getOrDefault(key, Collections.emptyNavigableSet());
+        return indexed.size() < candidates.size() ? indexed : candidates;
+    }
+
+    /**
+     * A resource matches if any of its paths matches the path prefix, and any of its paths configures the http verb
+     * with the scope.
+     */
+    private static boolean matches(List<PolicyEnforcerConfig.PathConfig> resource, Query query) {
+        if (query.getName() != null && !query.getName().equals(resource.get(0).getName())) {
+            return false;
+        }
+        if (query.getPathPrefix() != null && resource.stream()
+                .noneMatch(pathConfig -> pathConfig.getPath() != null && pathConfig.getPath().startsWith(query.getPathPrefix()))) {
+            return false;
+        }
+        if (query.getMethod() == null && query.getScope() == null) {
+            return true;
+        }
+        return resource.stream().flatMap(pathConfig -> pathConfig.getMethods().stream())
+                .filter(methodConfig -> query.getMethod() == null || query.getMethod().equals(methodConfig.getMethod()))
+                .anyMatch(methodConfig -> query.getScope() == null || methodConfig.getScopes().contains(query.getScope()));
+    }
+
+    private static String encodeCursor(String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+        }
+    }
+
+    @Value
+    public static class Query {
+        String pathPrefix;
+        String scope;
+        String name;
+        /**
+         * The http verb, upper case.
+         */
+        String method;
+        String cursor;
+        int limit;
+    }
+
+    @Value
+    public static class Page {
+        /**
+         * The paths of each resource of the page.
+         */
+        List<List<PolicyEnforcerConfig.PathConfig>> resources;
+        String nextCursor;
+    }
+}
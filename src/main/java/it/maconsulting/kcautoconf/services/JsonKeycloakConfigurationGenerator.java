@@ -1,61 +1,342 @@
 package it.maconsulting.kcautoconf.services;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import it.maconsulting.kcautoconf.pojo.AuthorizationScopeDTO;
 import it.maconsulting.kcautoconf.pojo.AuthorizationSettingsDTO;
 import it.maconsulting.kcautoconf.pojo.AuthorizedResourceDTO;
+import it.maconsulting.kcautoconf.pojo.ConfigurationDeltaDTO;
+import it.maconsulting.kcautoconf.pojo.PolicyDTO;
 import lombok.extern.slf4j.Slf4j;
 import org.keycloak.adapters.springboot.KeycloakSpringBootProperties;
 import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 public class JsonKeycloakConfigurationGenerator implements KeycloakConfigurationGeneratorService {
 
-    private final KeycloakSpringBootProperties keycloakSpringBootProperties;
+    private static final String DEFAULT_DECISION_STRATEGY = "AFFIRMATIVE";
+    private static final String DEFAULT_POLICY_ENFORCEMENT_MODE = "ENFORCING";
+    private static final String SCOPE_PERMISSION_PREFIX = "Scope permission ";
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    /**
+     * Supplies the policy enforcer configuration holding the paths, which may have been detached from the adapter
+     * properties.
+     */
+    private final Supplier<PolicyEnforcerConfig> policyEnforcerConfig;
+    /**
+     * Tells the paths whose id has been resolved from Keycloak, which are exported as the paths without an id.
+     */
+    private final Predicate<PolicyEnforcerConfig.PathConfig> resolvedResourceId;
+
+    @Value("${kcautoconf.export.apply-policies:}")
+    private String[] applyPolicies = {};
 
-    @Autowired
     public JsonKeycloakConfigurationGenerator(KeycloakSpringBootProperties keycloakSpringBootProperties) {
-        this.keycloakSpringBootProperties = keycloakSpringBootProperties;
+        this.policyEnforcerConfig = keycloakSpringBootProperties::getPolicyEnforcerConfig;
+        this.resolvedResourceId = pathConfig -> false;
+    }
+
+    @Autowired
+    public JsonKeycloakConfigurationGenerator(KeycloakSpringBootProperties keycloakSpringBootProperties,
+                                              AutoconfigurationService autoconfigurationService) {
+        this.policyEnforcerConfig = autoconfigurationService::getPolicyEnforcerConfig;
+        this.resolvedResourceId = autoconfigurationService::hasResolvedResourceId;
     }
 
     @Override
     public AuthorizationSettingsDTO generateConfigurationAsJson() {
         AuthorizationSettingsDTO settings = new AuthorizationSettingsDTO();
         //DEFAULTS
-        settings.setDecisionStrategy("AFFIRMATIVE");
-        settings.setPolicyEnforcementMode("ENFORCING");
-
-        List<PolicyEnforcerConfig.PathConfig> paths = keycloakSpringBootProperties.getPolicyEnforcerConfig().getPaths();
-        List<AuthorizedResourceDTO> resourceDTOS = new ArrayList<>();
-        paths.forEach(pathConfig -> {
-            if(!PolicyEnforcerConfig.EnforcementMode.DISABLED.equals(pathConfig.getEnforcementMode()) &&
-                    //skip existing pathconfigs
-                    pathConfig.getId() == null) {
-                AuthorizedResourceDTO resourceDTO = new AuthorizedResourceDTO();
-                resourceDTO.setName(pathConfig.getName());
-                resourceDTO.setDisplayName(pathConfig.getName());
-                resourceDTO.getUris().add(pathConfig.getPath());
-                Set<String> scopes = pathConfig.getMethods().stream().flatMap(methodConfig -> methodConfig.getScopes().stream()).collect(Collectors.toSet());
-                scopes.forEach(scope -> {
-                    if(!scope.isEmpty()) {
-                        AuthorizationScopeDTO scopeDTO = new AuthorizationScopeDTO();
-                        scopeDTO.setName(scope);
-                        settings.getScopes().add(scopeDTO);
-                        resourceDTO.getScopes().add(scopeDTO);
-                    }
-                });
-                resourceDTOS.add(resourceDTO);
+        settings.setDecisionStrategy(DEFAULT_DECISION_STRATEGY);
+        settings.setPolicyEnforcementMode(DEFAULT_POLICY_ENFORCEMENT_MODE);
+
+        List<PolicyEnforcerConfig.PathConfig> paths = policyEnforcerConfig.get().getPaths();
+        ScopeRegistry scopeRegistry = new ScopeRegistry();
+        Map<Set<String>, Set<String>> resourcesByScopes = new HashMap<>();
+        for (List<PolicyEnforcerConfig.PathConfig> group : groupByResource(paths, resolvedResourceId)) {
+            AuthorizedResourceDTO resourceDTO = toResource(group, scopeRegistry);
+            settings.getResources().add(resourceDTO);
+            collectScopes(resourceDTO, resourcesByScopes);
+        }
+        settings.setPolicies(toScopePermissions(resourcesByScopes));
+        settings.setScopes(scopeRegistry.getScopes());
+        return settings;
+    }
+
+    /**
+     * Writes the resources first, one name group at a time, collecting only the scopes and the names of the
+     * resources; the permissions and the scopes are written from them afterwards.
+     */
+    @Override
+    public void writeConfigurationAsJson(JsonWriter writer) throws IOException {
+        List<PolicyEnforcerConfig.PathConfig> paths = new ArrayList<>(policyEnforcerConfig.get().getPaths());
+        writer.beginObject();
+        writer.name("allowRemoteResourceManagement").value(false);
+        writer.name("policyEnforcementMode").value(DEFAULT_POLICY_ENFORCEMENT_MODE);
+        writer.name("decisionStrategy").value(DEFAULT_DECISION_STRATEGY);
+        ScopeRegistry scopeRegistry = new ScopeRegistry();
+        Map<Set<String>, Set<String>> resourcesByScopes = new HashMap<>();
+        writer.name("resources").beginArray();
+        for (List<PolicyEnforcerConfig.PathConfig> group : groupByResource(paths, resolvedResourceId)) {
+            AuthorizedResourceDTO resourceDTO = toResource(group, scopeRegistry);
+            GSON.toJson(resourceDTO, AuthorizedResourceDTO.class, writer);
+            collectScopes(resourceDTO, resourcesByScopes);
+        }
+        writer.endArray();
+        writer.name("policies").beginArray();
+        for (PolicyDTO policyDTO : toScopePermissions(resourcesByScopes)) {
+            GSON.toJson(policyDTO, PolicyDTO.class, writer);
+        }
+        writer.endArray();
+        writer.name("scopes").beginArray();
+        for (AuthorizationScopeDTO scopeDTO : scopeRegistry.getScopes()) {
+            GSON.toJson(scopeDTO, AuthorizationScopeDTO.class, writer);
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
+
+    @Override
+    public AuthorizedResourceDTO generateResource(List<PolicyEnforcerConfig.PathConfig> pathConfigs) {
+        return toResource(pathConfigs, new ScopeRegistry());
+    }
+
+    @Override
+    public String computeVersion(AuthorizationSettingsDTO settings) {
+        return snapshot(settings).getVersion();
+    }
+
+    @Override
+    public ConfigurationSnapshot snapshot(AuthorizationSettingsDTO settings) {
+        VersionBuilder versionBuilder = new VersionBuilder();
+        settings.getPolicies().forEach(versionBuilder::addPolicy);
+        settings.getResources().forEach(versionBuilder::addResource);
+        return versionBuilder.build(settings.isAllowRemoteResourceManagement(), settings.getPolicyEnforcementMode(),
+                settings.getDecisionStrategy(), scopeNames(settings));
+    }
+
+    /**
+     * Computes the snapshot of the current configuration as the streaming export does, one resource group at a
+     * time, without building the export.
+     */
+    @Override
+    public ConfigurationSnapshot snapshotConfiguration() {
+        List<PolicyEnforcerConfig.PathConfig> paths = new ArrayList<>(policyEnforcerConfig.get().getPaths());
+        ScopeRegistry scopeRegistry = new ScopeRegistry();
+        Map<Set<String>, Set<String>> resourcesByScopes = new HashMap<>();
+        VersionBuilder versionBuilder = new VersionBuilder();
+        for (List<PolicyEnforcerConfig.PathConfig> group : groupByResource(paths, resolvedResourceId)) {
+            AuthorizedResourceDTO resourceDTO = toResource(group, scopeRegistry);
+            versionBuilder.addResource(resourceDTO);
+            collectScopes(resourceDTO, resourcesByScopes);
+        }
+        toScopePermissions(resourcesByScopes).forEach(versionBuilder::addPolicy);
+        Set<String> scopes = new TreeSet<>();
+        scopeRegistry.getScopes().forEach(scope -> scopes.add(scope.getName()));
+        return versionBuilder.build(false, DEFAULT_POLICY_ENFORCEMENT_MODE, DEFAULT_DECISION_STRATEGY, scopes);
+    }
+
+    @Override
+    public ConfigurationDeltaDTO generateDelta(ConfigurationSnapshot baseline, AuthorizationSettingsDTO current) {
+        ConfigurationDeltaDTO delta = new ConfigurationDeltaDTO();
+        ConfigurationSnapshot currentSnapshot = snapshot(current);
+        delta.setBaseVersion(baseline.getVersion());
+        delta.setVersion(currentSnapshot.getVersion());
+
+        Set<String> currentKeys = new HashSet<>();
+        current.getResources().forEach(resource -> {
+            String key = resourceKey(resource);
+            if (!currentKeys.add(key)) {
+                return;
+            }
+            String previousHash = baseline.getResourceHashes().get(key);
+            if (previousHash == null) {
+                delta.getAddedResources().add(resource);
+            } else if (!previousHash.equals(currentSnapshot.getResourceHashes().get(key))) {
+                delta.getModifiedResources().add(resource);
             }
         });
+        baseline.getResourceHashes().keySet().stream().filter(key -> !currentKeys.contains(key)).sorted()
+                .forEach(delta.getRemovedResources()::add);
 
-        settings.setResources(resourceDTOS);
-        return settings;
+        Set<String> baselineScopes = baseline.getScopes();
+        Set<String> currentScopes = currentSnapshot.getScopes();
+        currentScopes.stream().filter(scope -> !baselineScopes.contains(scope))
+                .forEach(scope -> delta.getAddedScopes().add(scopeDTO(scope)));
+        baselineScopes.stream().filter(scope -> !currentScopes.contains(scope))
+                .forEach(scope -> delta.getRemovedScopes().add(scopeDTO(scope)));
+        return delta;
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Collects the hashes of the policies and of the resources of a configuration, one at a time. The version is the
+     * hash of the settings, of the sorted hashes and of the sorted scope names, so it does not depend on the order of
+     * the policies, resources, scopes and uris.
+     */
+    private static final class VersionBuilder {
+        private final List<String> policyHashes = new ArrayList<>();
+        private final List<String> resourceHashes = new ArrayList<>();
+        private final Map<String, String> resourceHashesByKey = new HashMap<>();
+
+        private void addPolicy(PolicyDTO policyDTO) {
+            policyHashes.add(sha256(GSON.toJson(policyDTO)));
+        }
+
+        private void addResource(AuthorizedResourceDTO resourceDTO) {
+            String hash = sha256(canonicalResource(resourceDTO));
+            resourceHashes.add(hash);
+            resourceHashesByKey.putIfAbsent(resourceKey(resourceDTO), hash);
+        }
+
+        private ConfigurationSnapshot build(boolean allowRemoteResourceManagement, String policyEnforcementMode,
+                                            String decisionStrategy, Set<String> scopes) {
+            JsonObject canonical = new JsonObject();
+            canonical.addProperty("allowRemoteResourceManagement", allowRemoteResourceManagement);
+            canonical.addProperty("policyEnforcementMode", policyEnforcementMode);
+            canonical.addProperty("decisionStrategy", decisionStrategy);
+            canonical.add("policies", sorted(policyHashes.stream()));
+            canonical.add("resources", sorted(resourceHashes.stream()));
+            canonical.add("scopes", sorted(scopes.stream()));
+            return new ConfigurationSnapshot(sha256(canonical.toString()), resourceHashesByKey, scopes);
+        }
+    }
+
+    /**
+     * Resources are identified by name, as in Keycloak; the unnamed ones by their uris.
+     */
+    private static String resourceKey(AuthorizedResourceDTO resource) {
+        return resource.getName() != null ? resource.getName() : new TreeSet<>(resource.getUris()).toString();
+    }
+
+    private static String canonicalResource(AuthorizedResourceDTO resource) {
+        JsonObject canonical = new JsonObject();
+        canonical.addProperty("name", resource.getName());
+        canonical.addProperty("displayName", resource.getDisplayName());
+        canonical.addProperty("ownerManagedAccess", resource.isOwnerManagedAccess());
+        canonical.add("scopes", sorted(resource.getScopes().stream().map(AuthorizationScopeDTO::getName)));
+        canonical.add("uris", sorted(resource.getUris().stream()));
+        return canonical.toString();
+    }
+
+    private static Set<String> scopeNames(AuthorizationSettingsDTO settings) {
+        Set<String> names = new TreeSet<>();
+        settings.getScopes().forEach(scope -> names.add(scope.getName()));
+        settings.getResources().forEach(resource -> resource.getScopes().forEach(scope -> names.add(scope.getName())));
+        return names;
+    }
+
+    private static JsonArray sorted(Stream<String> values) {
+        JsonArray array = new JsonArray();
+        values.filter(Objects::nonNull).sorted().forEach(array::add);
+        return array;
+    }
+
+    private static AuthorizationScopeDTO scopeDTO(String name) {
+        AuthorizationScopeDTO scopeDTO = new AuthorizationScopeDTO();
+        scopeDTO.setName(name);
+        return scopeDTO;
+    }
+
+    /**
+     * Groups the exported paths by resource: paths sharing the same name, as configured by the resource granularity,
+     * make a single resource, while unnamed paths are exported one by one. The groups are in the order of their
+     * first path, and only hold references to the paths.
+     */
+    static Collection<List<PolicyEnforcerConfig.PathConfig>> groupByResource(List<PolicyEnforcerConfig.PathConfig> paths,
+                                                                             Predicate<PolicyEnforcerConfig.PathConfig> resolvedResourceId) {
+        Map<Object, List<PolicyEnforcerConfig.PathConfig>> groups = new LinkedHashMap<>();
+        paths.stream().filter(pathConfig -> ExportIndex.isExported(pathConfig, resolvedResourceId)).forEach(pathConfig -> groups
+                .computeIfAbsent(pathConfig.getName() != null ? pathConfig.getName() : pathConfig, key -> new ArrayList<>(1))
+                .add(pathConfig));
+        return groups.values();
+    }
+
+    /**
+     * Adds the resource to the named resources requiring exactly its scopes. Unnamed resources cannot be referenced
+     * by a permission, and are skipped.
+     */
+    private static void collectScopes(AuthorizedResourceDTO resourceDTO, Map<Set<String>, Set<String>> resourcesByScopes) {
+        if (resourceDTO.getName() == null || resourceDTO.getScopes().isEmpty()) {
+            return;
+        }
+        resourcesByScopes.computeIfAbsent(resourceDTO.getScopes().stream().map(AuthorizationScopeDTO::getName)
+                .collect(Collectors.toCollection(TreeSet::new)), scopes -> new TreeSet<>()).add(resourceDTO.getName());
+    }
+
+    /**
+     * Creates one scope-based permission for each distinct set of scopes, granting those scopes on all the named
+     * resources requiring exactly them. The permissions are named after their sorted scopes and sorted by name, so
+     * that the same resources always produce the same permissions.
+     */
+    private List<PolicyDTO> toScopePermissions(Map<Set<String>, Set<String>> resourcesByScopes) {
+        String encodedApplyPolicies = GSON.toJson(Arrays.stream(applyPolicies).map(String::trim)
+                .filter(Predicate.not(String::isEmpty)).collect(Collectors.toList()));
+        List<PolicyDTO> permissions = new ArrayList<>();
+        resourcesByScopes.forEach((scopes, resources) -> {
+            PolicyDTO permission = new PolicyDTO();
+            permission.setName(SCOPE_PERMISSION_PREFIX + String.join(", ", scopes));
+            permission.setType("scope");
+            permission.setLogic("POSITIVE");
+            permission.setDecisionStrategy("UNANIMOUS");
+            permission.getConfig().put("resources", GSON.toJson(resources));
+            permission.getConfig().put("scopes", GSON.toJson(scopes));
+            permission.getConfig().put("applyPolicies", encodedApplyPolicies);
+            permissions.add(permission);
+        });
+        permissions.sort(Comparator.comparing(PolicyDTO::getName));
+        return permissions;
+    }
+
+    /**
+     * @param group         the exported paths of a resource, sharing the same name
+     * @param scopeRegistry provides the shared instances of the scopes, and collects them
+     * @return the resource with all the uris of the paths and the union of their scopes
+     */
+    private AuthorizedResourceDTO toResource(List<PolicyEnforcerConfig.PathConfig> group, ScopeRegistry scopeRegistry) {
+        AuthorizedResourceDTO resourceDTO = new AuthorizedResourceDTO();
+        resourceDTO.setName(group.get(0).getName());
+        resourceDTO.setDisplayName(group.get(0).getName());
+        resourceDTO.setUris(group.stream().map(PolicyEnforcerConfig.PathConfig::getPath).filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+        resourceDTO.setScopes(group.stream()
+                .flatMap(pathConfig -> pathConfig.getMethods().stream())
+                .flatMap(methodConfig -> methodConfig.getScopes().stream())
+                .filter(scope -> !scope.isEmpty())
+                .distinct()
+                .map(scopeRegistry::intern)
+                .collect(Collectors.toList()));
+        return resourceDTO;
     }
 }
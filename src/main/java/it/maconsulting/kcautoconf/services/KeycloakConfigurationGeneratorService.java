@@ -1,8 +1,64 @@
 package it.maconsulting.kcautoconf.services;
 
+import com.google.gson.stream.JsonWriter;
 import it.maconsulting.kcautoconf.pojo.AuthorizationSettingsDTO;
+import it.maconsulting.kcautoconf.pojo.ConfigurationDeltaDTO;
+import it.maconsulting.kcautoconf.pojo.AuthorizedResourceDTO;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.io.IOException;
+import java.util.List;
 
 public interface KeycloakConfigurationGeneratorService {
 
     AuthorizationSettingsDTO generateConfigurationAsJson();
+
+    /**
+     * Writes the same configuration returned by {@link #generateConfigurationAsJson()}, one resource at a time,
+     * without holding the whole export in memory: only references to the paths of each resource and the names of the
+     * resources by set of scopes, needed by the permissions written after the resources, are kept.
+     *
+     * @param writer the destination of the export
+     * @throws IOException if the writer fails
+     */
+    void writeConfigurationAsJson(JsonWriter writer) throws IOException;
+
+    /**
+     * @param pathConfigs the exported policy enforcer paths of a resource, sharing the same name
+     * @return the resource exported for the paths
+     */
+    AuthorizedResourceDTO generateResource(List<PolicyEnforcerConfig.PathConfig> pathConfigs);
+
+    /**
+     * @param settings a configuration
+     * @return the hash of the content of the configuration, regardless of the order of its resources, scopes and uris
+     */
+    String computeVersion(AuthorizationSettingsDTO settings);
+
+    /**
+     * @param settings a configuration
+     * @return its version, together with what the delta needs of it as a baseline
+     */
+    ConfigurationSnapshot snapshot(AuthorizationSettingsDTO settings);
+
+    /**
+     * @return the snapshot of the current configuration, computed without generating the whole export
+     */
+    ConfigurationSnapshot snapshotConfiguration();
+
+    /**
+     * @param baseline the snapshot of a previous configuration
+     * @param current  the current configuration
+     * @return the resources and scopes added, modified or removed since the baseline
+     */
+    ConfigurationDeltaDTO generateDelta(ConfigurationSnapshot baseline, AuthorizationSettingsDTO current);
+
+    /**
+     * @param baseline a previous configuration
+     * @param current  the current configuration
+     * @return the resources and scopes added, modified or removed since the baseline
+     */
+    default ConfigurationDeltaDTO generateDelta(AuthorizationSettingsDTO baseline, AuthorizationSettingsDTO current) {
+        return generateDelta(snapshot(baseline), current);
+    }
 }
@@ -0,0 +1,42 @@
+package it.maconsulting.kcautoconf.services;
+
+import it.maconsulting.kcautoconf.pojo.AuthorizationScopeDTO;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns the scopes of an export: each scope is created once, and shared by all the resources requiring it.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+public class ScopeRegistry {
+
+    private final Map<String, AuthorizationScopeDTO> scopes = new LinkedHashMap<>();
+
+    /**
+     * @param name the scope name
+     * @return the only instance of the scope in this registry
+     */
+    public AuthorizationScopeDTO intern(String name) {
+        return scopes.computeIfAbsent(name, key -> {
+            AuthorizationScopeDTO scopeDTO = new AuthorizationScopeDTO();
+            scopeDTO.setName(key);
+            return scopeDTO;
+        });
+    }
+
+    /**
+     * @return the registered scopes, in registration order
+     */
+    public List<AuthorizationScopeDTO> getScopes() {
+        return new ArrayList<>(scopes.values());
+    }
+
+    public int size() {
+        return scopes.size();
+    }
+}
@@ -14,4 +14,22 @@ public interface SwaggerOperationService {
 
     String getName(Method method);
 
+    /**
+     * Gets the tags of a method, as declared on the operation or, if missing, on its controller
+     * @param method the method to get tags for
+     * @return the list of tags, empty if none
+     */
+    default List<String> getTags(Method method) {
+        return List.of();
+    }
+
+    /**
+     * Tells whether the Api declares the method as not requiring any security
+     * @param method the method to check
+     * @return true if the method is declared public
+     */
+    default boolean isPublic(Method method) {
+        return false;
+    }
+
 }
@@ -1,5 +1,6 @@
 package it.maconsulting.kcautoconf.services;
 
+import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.Authorization;
 import io.swagger.annotations.AuthorizationScope;
@@ -19,7 +20,7 @@ import java.util.stream.Collectors;
 public class SwaggerV2OperationService implements SwaggerOperationService {
 
     public List<String> getScopes(Method method) {
-        final ApiOperation apiOperationAnnotation = AnnotationUtils.getAnnotation(method, ApiOperation.class);
+        final ApiOperation apiOperationAnnotation = AnnotationUtils.findAnnotation(method, ApiOperation.class);
         if (apiOperationAnnotation != null) {
             List<AuthorizationScope[]> scopes = Arrays.stream(apiOperationAnnotation.authorizations()).map(Authorization::scopes).collect(Collectors.toList());
             return scopes.stream().flatMap(inner -> Arrays.stream(inner).map(AuthorizationScope::scope)).collect(Collectors.toList());
@@ -30,7 +31,7 @@ public class SwaggerV2OperationService implements SwaggerOperationService {
 
     @Override
     public String getName(Method method) {
-        final ApiOperation apiOperationAnnotation = AnnotationUtils.getAnnotation(method, ApiOperation.class);
+        final ApiOperation apiOperationAnnotation = AnnotationUtils.findAnnotation(method, ApiOperation.class);
         String name = method.getName();
         if (apiOperationAnnotation != null &&
                 apiOperationAnnotation.nickname() != null &&
@@ -39,4 +40,21 @@ public class SwaggerV2OperationService implements SwaggerOperationService {
         }
         return name;
     }
+
+    @Override
+    public List<String> getTags(Method method) {
+        final ApiOperation apiOperationAnnotation = AnnotationUtils.findAnnotation(method, ApiOperation.class);
+        if (apiOperationAnnotation != null) {
+            List<String> tags = nonBlank(apiOperationAnnotation.tags());
+            if (!tags.isEmpty()) {
+                return tags;
+            }
+        }
+        final Api apiAnnotation = AnnotationUtils.findAnnotation(method.getDeclaringClass(), Api.class);
+        return apiAnnotation != null ? nonBlank(apiAnnotation.tags()) : Collections.emptyList();
+    }
+
+    private List<String> nonBlank(String[] values) {
+        return Arrays.stream(values).filter(value -> !value.isBlank()).collect(Collectors.toList());
+    }
 }
@@ -1,8 +1,11 @@
 package it.maconsulting.kcautoconf.services;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirements;
+import io.swagger.v3.oas.annotations.tags.Tag;
 import it.maconsulting.kcautoconf.conditions.SwaggerV3Condition;
 import org.springframework.context.annotation.Conditional;
+import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.stereotype.Service;
 
@@ -10,6 +13,7 @@ import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -17,7 +21,7 @@ import java.util.stream.Collectors;
 public class SwaggerV3OperationService implements SwaggerOperationService {
 
     public List<String> getScopes(Method method) {
-        final Operation apiOperationAnnotation = AnnotationUtils.getAnnotation(method, Operation.class);
+        final Operation apiOperationAnnotation = AnnotationUtils.findAnnotation(method, Operation.class);
         if (apiOperationAnnotation != null) {
             return Arrays.stream(apiOperationAnnotation.security()).flatMap(scope -> Arrays.stream(scope.scopes())).collect(Collectors.toList());
         } else {
@@ -27,7 +31,7 @@ public class SwaggerV3OperationService implements SwaggerOperationService {
 
     @Override
     public String getName(Method method) {
-        final Operation apiOperationAnnotation = AnnotationUtils.getAnnotation(method, Operation.class);
+        final Operation apiOperationAnnotation = AnnotationUtils.findAnnotation(method, Operation.class);
         String name = method.getName();
         if (apiOperationAnnotation != null &&
                 apiOperationAnnotation.operationId() != null &&
@@ -36,4 +40,33 @@ public class SwaggerV3OperationService implements SwaggerOperationService {
         }
         return name;
     }
+
+    @Override
+    public List<String> getTags(Method method) {
+        final Operation apiOperationAnnotation = AnnotationUtils.findAnnotation(method, Operation.class);
+        if (apiOperationAnnotation != null) {
+            List<String> tags = Arrays.stream(apiOperationAnnotation.tags()).filter(tag -> !tag.isBlank()).collect(Collectors.toList());
+            if (!tags.isEmpty()) {
+                return tags;
+            }
+        }
+        Set<Tag> tagAnnotations = AnnotatedElementUtils.findMergedRepeatableAnnotations(method, Tag.class);
+        if (tagAnnotations.isEmpty()) {
+            tagAnnotations = AnnotatedElementUtils.findMergedRepeatableAnnotations(method.getDeclaringClass(), Tag.class);
+        }
+        return tagAnnotations.stream().map(Tag::name).filter(tag -> !tag.isBlank()).collect(Collectors.toList());
+    }
+
+    /**
+     * An empty {@code @SecurityRequirements} on the method, or on its controller, overrides the global security of
+     * the Api with none.
+     */
+    @Override
+    public boolean isPublic(Method method) {
+        SecurityRequirements securityRequirements = AnnotationUtils.findAnnotation(method, SecurityRequirements.class);
+        if (securityRequirements == null) {
+            securityRequirements = AnnotationUtils.findAnnotation(method.getDeclaringClass(), SecurityRequirements.class);
+        }
+        return securityRequirements != null && securityRequirements.value().length == 0;
+    }
 }
@@ -0,0 +1,36 @@
+package it.maconsulting.kcautoconf.utils;
+
+/**
+ * Helpers to build the policy enforcement paths out of the class and method level mappings.<br>
+ * They are shared between the runtime scan and the compile-time inventory processor, so that both produce
+ * exactly the same paths.
+ *
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+public final class PathUtils {
+
+    private PathUtils() {
+    }
+
+    /**
+     * Joins the given path fragments, adding the leading slash where needed and removing the trailing one.
+     *
+     * @param paths the path fragments, in order
+     * @return the http path
+     */
+    public static String buildHttpPath(String... paths) {
+        StringBuilder sb = new StringBuilder();
+        for (String path : paths) {
+            if (!path.isEmpty()) {
+                sb.append(addLeadingSlash(path));
+            }
+        }
+        String path = addLeadingSlash(sb.toString());
+        return (path.length() > 1 && path.endsWith("/")) ? path.substring(0, path.lastIndexOf("/")) : path;
+    }
+
+    public static String addLeadingSlash(String path) {
+        return !path.startsWith("/") ? "/" + path : path;
+    }
+}
@@ -0,0 +1,114 @@
+package it.maconsulting.kcautoconf;
+
+import it.maconsulting.kcautoconf.enforcement.AuthorizationDecisionService;
+import it.maconsulting.kcautoconf.enforcement.CachingAuthorizationDecisionService;
+import it.maconsulting.kcautoconf.enforcement.DecisionUnavailableException;
+import it.maconsulting.kcautoconf.enforcement.EnforcementRequest;
+import it.maconsulting.kcautoconf.enforcement.EnforcementTarget;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+import org.mockito.Mockito;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+class CachingAuthorizationDecisionServiceTest {
+
+    private AuthorizationDecisionService delegate;
+    private Clock clock;
+    private PolicyEnforcerConfig.PathConfig pathConfig;
+
+    @BeforeEach
+    public void setup() {
+        delegate = Mockito.mock(AuthorizationDecisionService.class);
+        Mockito.when(delegate.isAuthorized(Mockito.any())).thenReturn(true);
+        clock = Mockito.mock(Clock.class);
+        Mockito.when(clock.millis()).thenReturn(100_000L);
+        pathConfig = new PolicyEnforcerConfig.PathConfig();
+        pathConfig.setPath("/cars");
+        PolicyEnforcerConfig.MethodConfig methodConfig = new PolicyEnforcerConfig.MethodConfig();
+        methodConfig.setMethod("GET");
+        methodConfig.setScopes(List.of("car:read"));
+        pathConfig.getMethods().add(methodConfig);
+    }
+
+    @Test
+    void givenSameTokenAndTarget_decisionIsReusedUntilTheTokenExpires() {
+        CachingAuthorizationDecisionService sut = new CachingAuthorizationDecisionService(delegate, 100, Duration.ofMinutes(5), clock);
+
+        Assertions.assertTrue(sut.isAuthorized(request("token-1", 130L, "GET")));
+        Assertions.assertTrue(sut.isAuthorized(request("token-1", 130L, "get")));
+        Mockito.verify(delegate, Mockito.times(1)).isAuthorized(Mockito.any());
+
+        sut.isAuthorized(request("token-2", 130L, "GET"));
+        sut.isAuthorized(request("token-1", 130L, "POST"));
+        sut.isAuthorized(request("token-1", null, "GET"));
+        Mockito.verify(delegate, Mockito.times(4)).isAuthorized(Mockito.any());
+
+        Mockito.when(clock.millis()).thenReturn(130_000L);
+        sut.isAuthorized(request("token-1", 130L, "GET"));
+        Mockito.verify(delegate, Mockito.times(5)).isAuthorized(Mockito.any());
+    }
+
+    @Test
+    void givenManyTokens_cacheStaysBounded() {
+        CachingAuthorizationDecisionService sut = new CachingAuthorizationDecisionService(delegate, 10, Duration.ofMinutes(5), clock);
+
+        for (int i = 0; i < 100; i++) {
+            sut.isAuthorized(request("token-" + i, 1000L, "GET"));
+        }
+
+        Assertions.assertTrue(sut.size() <= 10);
+    }
+
+    @Test
+    void givenUnavailableDecision_itIsAskedAgainOnTheNextRequest() {
+        CachingAuthorizationDecisionService sut = new CachingAuthorizationDecisionService(delegate, 100, Duration.ofMinutes(5), clock);
+        Mockito.when(delegate.isAuthorized(Mockito.any()))
+                .thenThrow(new DecisionUnavailableException("timeout"))
+                .thenReturn(true);
+
+        Assertions.assertThrows(DecisionUnavailableException.class, () -> sut.isAuthorized(request("token-1", 130L, "GET")));
+        Assertions.assertEquals(0, sut.size());
+        Assertions.assertTrue(sut.isAuthorized(request("token-1", 130L, "GET")));
+        Assertions.assertTrue(sut.isAuthorized(request("token-1", 130L, "GET")));
+        Mockito.verify(delegate, Mockito.times(2)).isAuthorized(Mockito.any());
+    }
+
+    @Test
+    void givenUnverifiedToken_decisionIsNotCached() {
+        CachingAuthorizationDecisionService sut = new CachingAuthorizationDecisionService(delegate, 100, Duration.ofMinutes(5), clock);
+        EnforcementRequest unverified = new EnforcementRequest("token-1", null, EnforcementTarget.of(pathConfig, "GET"), "GET", false);
+
+        sut.isAuthorized(unverified);
+        sut.isAuthorized(unverified);
+
+        Mockito.verify(delegate, Mockito.times(2)).isAuthorized(Mockito.any());
+        Assertions.assertEquals(0, sut.size());
+    }
+
+    @Test
+    void givenTokensSharingTheSameId_decisionsAreNotShared() {
+        CachingAuthorizationDecisionService sut = new CachingAuthorizationDecisionService(delegate, 100, Duration.ofMinutes(5), clock);
+        Mockito.when(delegate.isAuthorized(Mockito.any())).thenAnswer(invocation ->
+                "granted".equals(invocation.<EnforcementRequest>getArgument(0).getToken()));
+
+        Assertions.assertTrue(sut.isAuthorized(request("granted", 130L, "GET")));
+        Assertions.assertFalse(sut.isAuthorized(request("forged", 130L, "GET")));
+    }
+
+    private EnforcementRequest request(String token, Long expiration, String verb) {
+        AccessToken accessToken = new AccessToken();
+        accessToken.id("jti");
+        accessToken.exp(expiration);
+        return new EnforcementRequest(token, accessToken, EnforcementTarget.of(pathConfig, verb), verb, false);
+    }
+}
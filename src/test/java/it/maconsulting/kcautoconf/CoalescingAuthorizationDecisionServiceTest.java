@@ -0,0 +1,152 @@
+package it.maconsulting.kcautoconf;
+
+import com.sun.net.httpserver.HttpServer;
+import it.maconsulting.kcautoconf.enforcement.CoalescingAuthorizationDecisionService;
+import it.maconsulting.kcautoconf.enforcement.DecisionUnavailableException;
+import it.maconsulting.kcautoconf.enforcement.EnforcementRequest;
+import it.maconsulting.kcautoconf.enforcement.EnforcementTarget;
+import it.maconsulting.kcautoconf.enforcement.UmaAuthorizationDecisionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+class CoalescingAuthorizationDecisionServiceTest {
+
+    private HttpServer server;
+    private final AtomicInteger decisions = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private PolicyEnforcerConfig.PathConfig pathConfig;
+    private URI tokenEndpoint;
+    private HttpClient httpClient;
+    private CoalescingAuthorizationDecisionService sut;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/realms/test/protocol/openid-connect/token", exchange -> {
+            decisions.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        pathConfig = new PolicyEnforcerConfig.PathConfig();
+        pathConfig.setPath("/cars");
+        pathConfig.setName("Cars");
+        tokenEndpoint = URI.create("http://localhost:" + server.getAddress().getPort() + "/realms/test/protocol/openid-connect/token");
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newFixedThreadPool(2)).build();
+        sut = new CoalescingAuthorizationDecisionService(
+                new UmaAuthorizationDecisionService(tokenEndpoint, "client", httpClient, Duration.ofSeconds(5)));
+    }
+
+    @AfterEach
+    public void teardown() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void givenConcurrentIdenticalRequests_theyShareOneDecision() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(9);
+        CountDownLatch started = new CountDownLatch(9);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(callers.submit(() -> {
+                started.countDown();
+                return sut.isAuthorized(request("token-a"));
+            }));
+        }
+        Future<Boolean> other = callers.submit(() -> {
+            started.countDown();
+            return sut.isAuthorized(request("token-b"));
+        });
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        while (decisions.get() < 2) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(2, sut.getInFlightCount());
+        release.countDown();
+
+        for (Future<Boolean> result : results) {
+            Assertions.assertTrue(result.get(5, TimeUnit.SECONDS));
+        }
+        Assertions.assertTrue(other.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(2, decisions.get());
+        Assertions.assertEquals(0, sut.getInFlightCount());
+        callers.shutdown();
+    }
+
+    @Test
+    void givenUnreachableTokenEndpoint_decisionIsUnavailable() {
+        server.stop(0);
+
+        Assertions.assertThrows(DecisionUnavailableException.class, () -> sut.isAuthorized(request("token-a")));
+        Assertions.assertEquals(0, sut.getInFlightCount());
+    }
+
+    @Test
+    void givenPathWithoutResource_requestIsDeniedLocallyWhateverItsScopes() throws Exception {
+        pathConfig.setName(null);
+
+        Assertions.assertFalse(sut.isAuthorized(request("token-a")));
+        Assertions.assertFalse(sut.isAuthorizedAsync(request("token-a")).get(5, TimeUnit.SECONDS));
+
+        pathConfig.setScopes(List.of("car:read"));
+        Assertions.assertFalse(sut.isAuthorized(request("token-b")));
+        Assertions.assertFalse(sut.isAuthorizedAsync(request("token-b")).get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, decisions.get());
+    }
+
+    @Test
+    void givenTooManyRequestsInFlight_theExcessWaitsAndIsNeverDenied() throws Exception {
+        UmaAuthorizationDecisionService bounded = new UmaAuthorizationDecisionService(tokenEndpoint, "client", httpClient,
+                Duration.ofSeconds(5), 1, Duration.ofMillis(50));
+
+        CompletableFuture<Boolean> first = bounded.isAuthorizedAsync(request("token-a"));
+        ExecutionException rejected = Assertions.assertThrows(ExecutionException.class,
+                () -> bounded.isAuthorizedAsync(request("token-b")).get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(rejected.getCause() instanceof DecisionUnavailableException);
+        Assertions.assertThrows(DecisionUnavailableException.class, () -> bounded.isAuthorized(request("token-c")));
+
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+        UmaAuthorizationDecisionService patient = new UmaAuthorizationDecisionService(tokenEndpoint, "client", httpClient,
+                Duration.ofSeconds(5), 1, Duration.ofSeconds(5));
+        CompletableFuture<Boolean> second = patient.isAuthorizedAsync(request("token-d"));
+        Future<Boolean> waiting = callers.submit(() -> patient.isAuthorized(request("token-e")));
+        Thread.sleep(100);
+        Assertions.assertFalse(waiting.isDone());
+        release.countDown();
+
+        Assertions.assertTrue(first.get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(second.get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(waiting.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(3, decisions.get());
+        callers.shutdown();
+    }
+
+    private EnforcementRequest request(String token) {
+        return new EnforcementRequest(token, null, EnforcementTarget.of(pathConfig, "GET"), "GET", false);
+    }
+}
@@ -0,0 +1,133 @@
+package it.maconsulting.kcautoconf;
+
+import com.google.gson.stream.JsonWriter;
+import it.maconsulting.kcautoconf.controller.ConfigurationExportController;
+import it.maconsulting.kcautoconf.pojo.AuthorizationSettingsDTO;
+import it.maconsulting.kcautoconf.pojo.ConfigurationDeltaDTO;
+import it.maconsulting.kcautoconf.services.AutoconfigurationService;
+import it.maconsulting.kcautoconf.services.ConfigurationSnapshot;
+import it.maconsulting.kcautoconf.services.KeycloakConfigurationGeneratorService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.adapters.springboot.KeycloakSpringBootProperties;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+class ConfigurationExportControllerTest {
+
+    private KeycloakConfigurationGeneratorService generator;
+
+    private AutoconfigurationService autoconfigurationService;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        KeycloakSpringBootProperties keycloakSpringBootProperties = new KeycloakSpringBootProperties();
+        keycloakSpringBootProperties.setPolicyEnforcerConfig(new PolicyEnforcerConfig());
+        autoconfigurationService = new AutoconfigurationService(Mockito.mock(ApplicationContext.class),
+                keycloakSpringBootProperties, List.of());
+        generator = Mockito.mock(KeycloakConfigurationGeneratorService.class);
+        Mockito.when(generator.generateConfigurationAsJson()).thenAnswer(invocation -> new AuthorizationSettingsDTO());
+        ConfigurationSnapshot snapshot = new ConfigurationSnapshot("v1", Map.of(), Set.of());
+        Mockito.when(generator.snapshotConfiguration()).thenReturn(snapshot);
+        Mockito.when(generator.snapshot(Mockito.any())).thenReturn(snapshot);
+        Mockito.when(generator.generateDelta(Mockito.any(ConfigurationSnapshot.class), Mockito.any()))
+                .thenAnswer(invocation -> new ConfigurationDeltaDTO());
+
+        ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
+        templateResolver.setPrefix("WEB-INF/views/");
+        templateResolver.setSuffix(".html");
+        SpringTemplateEngine templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        ObjectProvider<SpringTemplateEngine> templateEngineProvider = Mockito.mock(ObjectProvider.class);
+        Mockito.when(templateEngineProvider.getObject()).thenReturn(templateEngine);
+
+        mockMvc = MockMvcBuilders.standaloneSetup(
+                new ConfigurationExportController(generator, autoconfigurationService, templateEngineProvider)).build();
+    }
+
+    @Test
+    void givenUnchangedConfiguration_exportIsRenderedOnceAndRevalidated() throws Exception {
+        MvcResult first = mockMvc.perform(get("/mac/configuration/export")).andExpect(status().isOk()).andReturn();
+        String etag = first.getResponse().getHeader("ETag");
+        Assertions.assertTrue(first.getResponse().getContentAsString().contains("allowRemoteResourceManagement"));
+
+        mockMvc.perform(get("/mac/configuration/export").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        MvcResult gzipped = mockMvc.perform(get("/mac/configuration/export").header("Accept-Encoding", "gzip, deflate"))
+                .andExpect(status().isOk()).andReturn();
+        Assertions.assertEquals("gzip", gzipped.getResponse().getHeader("Content-Encoding"));
+        Assertions.assertNotEquals(etag, gzipped.getResponse().getHeader("ETag"));
+        byte[] unzipped = new GZIPInputStream(new ByteArrayInputStream(gzipped.getResponse().getContentAsByteArray())).readAllBytes();
+        Assertions.assertEquals(first.getResponse().getContentAsString(), new String(unzipped, StandardCharsets.UTF_8));
+        for (String refused : List.of("gzip;q=0", "deflate, gzip; q=0.0", "*;q=0", "identity")) {
+            MvcResult plain = mockMvc.perform(get("/mac/configuration/export").header("Accept-Encoding", refused))
+                    .andExpect(status().isOk()).andReturn();
+            Assertions.assertNull(plain.getResponse().getHeader("Content-Encoding"), refused);
+        }
+        MvcResult wildcard = mockMvc.perform(get("/mac/configuration/export").header("Accept-Encoding", "br;q=1, *;q=0.5"))
+                .andExpect(status().isOk()).andReturn();
+        Assertions.assertEquals("gzip", wildcard.getResponse().getHeader("Content-Encoding"));
+        Mockito.verify(generator, Mockito.times(1)).generateConfigurationAsJson();
+
+        autoconfigurationService.enableConfigurationPage();
+        mockMvc.perform(get("/mac/configuration/export")).andExpect(status().isOk());
+        Mockito.verify(generator, Mockito.times(2)).generateConfigurationAsJson();
+    }
+
+    @Test
+    void givenJsonAcceptHeader_exportIsStreamed() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            invocation.getArgument(0, JsonWriter.class).beginObject().name("resources").beginArray().endArray().endObject();
+            return null;
+        }).when(generator).writeConfigurationAsJson(Mockito.any());
+
+        MvcResult json = mockMvc.perform(get("/mac/configuration/export").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andReturn();
+        Assertions.assertEquals("{\"resources\":[]}", json.getResponse().getContentAsString());
+        Assertions.assertEquals("v1", json.getResponse().getHeader("X-Configuration-Version"));
+        Mockito.verify(generator, Mockito.never()).generateConfigurationAsJson();
+        mockMvc.perform(get("/mac/configuration/export").param("since", "v1").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/mac/configuration/export").param("since", "v0").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isConflict());
+        mockMvc.perform(post("/mac/configuration/export").contentType(MediaType.APPLICATION_JSON).content("{\"resources\":[]}"))
+                .andExpect(status().isOk());
+        Mockito.verify(generator, Mockito.times(2)).generateDelta(Mockito.any(ConfigurationSnapshot.class), Mockito.any());
+        Mockito.verify(generator, Mockito.times(1)).snapshotConfiguration();
+        mockMvc.perform(get("/mac/configuration/export").accept(MediaType.TEXT_HTML))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_HTML));
+        Mockito.verify(generator, Mockito.times(1)).writeConfigurationAsJson(Mockito.any());
+    }
+}
@@ -0,0 +1,53 @@
+package it.maconsulting.kcautoconf;
+
+import it.maconsulting.kcautoconf.fixtures.ControllerV3WithAuthzScopes;
+import it.maconsulting.kcautoconf.fixtures.ControllerWithSingleRequestMapping;
+import it.maconsulting.kcautoconf.scan.ControllerClassScanner;
+import it.maconsulting.kcautoconf.scan.ControllerDiscoveryMode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.AnnotatedGenericBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+class ControllerClassScannerTest {
+
+    private GenericApplicationContext context;
+
+    @BeforeEach
+    public void setup() {
+        context = new GenericApplicationContext();
+        context.registerBeanDefinition("single", new AnnotatedGenericBeanDefinition(ControllerWithSingleRequestMapping.class));
+        context.registerBeanDefinition("authorized", new AnnotatedGenericBeanDefinition(ControllerV3WithAuthzScopes.class));
+        context.registerBean("notAController", String.class, "foo");
+    }
+
+    @Test
+    void givenBeanDefinitions_controllersAreFoundWithoutCreatingBeans() {
+        ControllerClassScanner sut = new ControllerClassScanner(context, new String[]{}, new String[]{});
+
+        Map<String, Class<?>> controllers = sut.findControllerClasses(ControllerDiscoveryMode.BEAN_DEFINITIONS);
+
+        Assertions.assertEquals(List.of(ControllerWithSingleRequestMapping.class, ControllerV3WithAuthzScopes.class),
+                List.copyOf(controllers.values()));
+        Assertions.assertFalse(context.getBeanFactory().containsSingleton("single"));
+    }
+
+    @Test
+    void givenPackageFilters_onlyMatchingControllersAreFound() {
+        ControllerClassScanner included = new ControllerClassScanner(context,
+                new String[]{"it.maconsulting.kcautoconf.fixtures"}, new String[]{});
+        ControllerClassScanner excluded = new ControllerClassScanner(context,
+                new String[]{"it.maconsulting"}, new String[]{" it.maconsulting.kcautoconf.fixtures"});
+
+        Assertions.assertEquals(2, included.findControllerClasses(ControllerDiscoveryMode.BEAN_DEFINITIONS).size());
+        Assertions.assertTrue(excluded.findControllerClasses(ControllerDiscoveryMode.BEAN_DEFINITIONS).isEmpty());
+    }
+}
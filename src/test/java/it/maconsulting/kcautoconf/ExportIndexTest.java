@@ -0,0 +1,81 @@
+package it.maconsulting.kcautoconf;
+
+import it.maconsulting.kcautoconf.services.ExportIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+class ExportIndexTest {
+
+    private final ExportIndex sut = new ExportIndex(List.of(
+            pathConfig("/cars/{id}", "Car", "GET", "car:read"),
+            pathConfig("/cars", "Cars", "POST", "car:create"),
+            pathConfig("/trucks/{id}", "Truck", "GET", "car:read"),
+            pathConfig("/bikes", "Bikes", "GET", "bike:read")), pathConfig -> false);
+
+    @Test
+    void givenFilters_onlyMatchingPathsAreReturned() {
+        Assertions.assertEquals(List.of("/cars/{id}", "/cars"), paths(sut.query(query("/cars", null, null, null, 10))));
+        Assertions.assertEquals(List.of("/cars/{id}", "/trucks/{id}"), paths(sut.query(query(null, "car:read", null, null, 10))));
+        Assertions.assertEquals(List.of("/bikes"), paths(sut.query(new ExportIndex.Query(null, null, "Bikes", "GET", null, 10))));
+        Assertions.assertTrue(sut.query(query("/cars", "bike:read", null, null, 10)).getResources().isEmpty());
+    }
+
+    @Test
+    void givenLimit_pagesAreLinkedByCursor() {
+        ExportIndex.Page first = sut.query(query(null, null, "GET", null, 2));
+        Assertions.assertEquals(List.of("/bikes", "/cars/{id}"), paths(first));
+        Assertions.assertNotNull(first.getNextCursor());
+
+        ExportIndex.Page second = sut.query(query(null, null, "GET", first.getNextCursor(), 2));
+        Assertions.assertEquals(List.of("/trucks/{id}"), paths(second));
+        Assertions.assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void givenPathsWithTheSameName_theyArePagedAsOneResource() {
+        ExportIndex index = new ExportIndex(List.of(
+                pathConfig("/cars/{id}", "Car", "GET", "car:read"),
+                pathConfig("/cars/{id}", "Car", "PUT", "car:update"),
+                pathConfig("/bikes", "Bikes", "GET", "bike:read"),
+                pathConfig("/vans", null, "GET", "car:read")), pathConfig -> false);
+
+        ExportIndex.Page first = index.query(query(null, null, null, null, 2));
+        Assertions.assertEquals(2, first.getResources().size());
+        Assertions.assertEquals(List.of("/bikes", "/cars/{id}", "/cars/{id}"), paths(first));
+
+        ExportIndex.Page second = index.query(query(null, null, null, first.getNextCursor(), 2));
+        Assertions.assertEquals(List.of("/vans"), paths(second));
+        Assertions.assertNull(second.getNextCursor());
+
+        ExportIndex.Page updates = index.query(query(null, "car:update", null, null, 10));
+        Assertions.assertEquals(1, updates.getResources().size());
+        Assertions.assertEquals(2, updates.getResources().get(0).size());
+    }
+
+    private ExportIndex.Query query(String pathPrefix, String scope, String method, String cursor, int limit) {
+        return new ExportIndex.Query(pathPrefix, scope, null, method, cursor, limit);
+    }
+
+    private List<String> paths(ExportIndex.Page page) {
+        return page.getResources().stream().flatMap(List::stream).map(PolicyEnforcerConfig.PathConfig::getPath).collect(Collectors.toList());
+    }
+
+    private PolicyEnforcerConfig.PathConfig pathConfig(String path, String name, String method, String scope) {
+        PolicyEnforcerConfig.PathConfig pathConfig = new PolicyEnforcerConfig.PathConfig();
+        pathConfig.setPath(path);
+        pathConfig.setName(name);
+        PolicyEnforcerConfig.MethodConfig methodConfig = new PolicyEnforcerConfig.MethodConfig();
+        methodConfig.setMethod(method);
+        methodConfig.setScopes(List.of(scope));
+        pathConfig.getMethods().add(methodConfig);
+        return pathConfig;
+    }
+}
@@ -1,7 +1,13 @@
 package it.maconsulting.kcautoconf;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import it.maconsulting.kcautoconf.pojo.AuthorizationScopeDTO;
 import it.maconsulting.kcautoconf.pojo.AuthorizationSettingsDTO;
 import it.maconsulting.kcautoconf.pojo.AuthorizedResourceDTO;
+import it.maconsulting.kcautoconf.pojo.ConfigurationDeltaDTO;
+import it.maconsulting.kcautoconf.pojo.PolicyDTO;
 import it.maconsulting.kcautoconf.services.JsonKeycloakConfigurationGenerator;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,10 +18,14 @@ import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * @author Michele Arciprete
@@ -74,7 +84,7 @@ class JsonKeycloakConfigurationGeneratorTest {
         Assertions.assertEquals("ENFORCING", settings.getPolicyEnforcementMode());
         Assertions.assertFalse(settings.isAllowRemoteResourceManagement());
         Assertions.assertEquals("AFFIRMATIVE", settings.getDecisionStrategy());
-        Assertions.assertTrue(settings.getPolicies().isEmpty());
+        Assertions.assertEquals(1, settings.getPolicies().size());
         List<AuthorizedResourceDTO> resources = settings.getResources();
         Assertions.assertFalse(resources.isEmpty());
         AuthorizedResourceDTO resource = resources.get(0);
@@ -85,4 +95,136 @@ class JsonKeycloakConfigurationGeneratorTest {
         Assertions.assertEquals("user:add", resource.getScopes().iterator().next().getName());
 
     }
+
+    @Test
+    void givenProperties_streamedExportMatchesGeneratedOne() throws Exception {
+        PolicyEnforcerConfig policyEnforcerConfig = new PolicyEnforcerConfig();
+        PolicyEnforcerConfig.PathConfig path = new PolicyEnforcerConfig.PathConfig();
+        path.setPath("/my/path");
+        path.setName("Add User");
+        PolicyEnforcerConfig.MethodConfig myMethod = new PolicyEnforcerConfig.MethodConfig();
+        myMethod.setMethod("POST");
+        myMethod.setScopes(Arrays.asList("user:add"));
+        path.getMethods().add(myMethod);
+        PolicyEnforcerConfig.PathConfig disabledPath = new PolicyEnforcerConfig.PathConfig();
+        disabledPath.setPath("/public");
+        disabledPath.setEnforcementMode(PolicyEnforcerConfig.EnforcementMode.DISABLED);
+        PolicyEnforcerConfig.PathConfig trucks = readablePath("/trucks");
+        trucks.setName("/cars");
+        policyEnforcerConfig.setPaths(new ArrayList<>(List.of(readablePath("/cars"), path, disabledPath, trucks)));
+
+        Mockito.when(keycloakSpringBootProperties.getPolicyEnforcerConfig()).thenReturn(policyEnforcerConfig);
+        StringWriter out = new StringWriter();
+        sut.writeConfigurationAsJson(new JsonWriter(out));
+
+        Assertions.assertEquals(new Gson().toJsonTree(sut.generateConfigurationAsJson()), JsonParser.parseString(out.toString()));
+        Assertions.assertEquals(sut.computeVersion(sut.generateConfigurationAsJson()), sut.snapshotConfiguration().getVersion());
+    }
+
+    @Test
+    void givenSharedScopes_theyAreExportedOnce() {
+        PolicyEnforcerConfig policyEnforcerConfig = new PolicyEnforcerConfig();
+        policyEnforcerConfig.setPaths(new ArrayList<>(List.of(readablePath("/cars"), readablePath("/trucks"))));
+        Mockito.when(keycloakSpringBootProperties.getPolicyEnforcerConfig()).thenReturn(policyEnforcerConfig);
+
+        AuthorizationSettingsDTO settings = sut.generateConfigurationAsJson();
+
+        Assertions.assertEquals(1, settings.getScopes().size());
+        Assertions.assertSame(settings.getScopes().get(0), settings.getResources().get(0).getScopes().get(0));
+        Assertions.assertSame(settings.getScopes().get(0), settings.getResources().get(1).getScopes().get(0));
+        Assertions.assertEquals(1, settings.getResources().get(0).getScopes().size());
+    }
+
+    @Test
+    void givenPathsWithTheSameName_aSingleResourceIsExported() {
+        PolicyEnforcerConfig.PathConfig cars = readablePath("/cars");
+        PolicyEnforcerConfig.PathConfig trucks = readablePath("/trucks");
+        trucks.setName("/cars");
+        trucks.getMethods().get(0).setScopes(List.of("entity:update"));
+        PolicyEnforcerConfig policyEnforcerConfig = new PolicyEnforcerConfig();
+        policyEnforcerConfig.setPaths(new ArrayList<>(List.of(cars, trucks)));
+        Mockito.when(keycloakSpringBootProperties.getPolicyEnforcerConfig()).thenReturn(policyEnforcerConfig);
+
+        AuthorizationSettingsDTO settings = sut.generateConfigurationAsJson();
+
+        Assertions.assertEquals(1, settings.getResources().size());
+        Assertions.assertEquals(List.of("/cars", "/trucks"), settings.getResources().get(0).getUris());
+        Assertions.assertEquals(List.of("entity:read", "entity:update"), settings.getResources().get(0).getScopes().stream()
+                .map(AuthorizationScopeDTO::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    void givenResourcesWithTheSameScopes_theyShareAPermission() {
+        PolicyEnforcerConfig.PathConfig trucks = readablePath("/trucks");
+        trucks.getMethods().get(0).setScopes(List.of("entity:update"));
+        PolicyEnforcerConfig policyEnforcerConfig = new PolicyEnforcerConfig();
+        policyEnforcerConfig.setPaths(new ArrayList<>(List.of(readablePath("/cars"), trucks, readablePath("/bikes"))));
+        Mockito.when(keycloakSpringBootProperties.getPolicyEnforcerConfig()).thenReturn(policyEnforcerConfig);
+        ReflectionTestUtils.setField(sut, "applyPolicies", new String[]{"Only Staff"});
+
+        List<PolicyDTO> policies = sut.generateConfigurationAsJson().getPolicies();
+
+        Assertions.assertEquals(2, policies.size());
+        PolicyDTO readPermission = policies.get(0);
+        Assertions.assertEquals("Scope permission entity:read", readPermission.getName());
+        Assertions.assertEquals("scope", readPermission.getType());
+        Assertions.assertEquals("[\"/bikes\",\"/cars\"]", readPermission.getConfig().get("resources"));
+        Assertions.assertEquals("[\"entity:read\"]", readPermission.getConfig().get("scopes"));
+        Assertions.assertEquals("[\"Only Staff\"]", readPermission.getConfig().get("applyPolicies"));
+        Assertions.assertEquals("Scope permission entity:read, entity:update", policies.get(1).getName());
+        Assertions.assertEquals("[\"/trucks\"]", policies.get(1).getConfig().get("resources"));
+    }
+
+    private PolicyEnforcerConfig.PathConfig readablePath(String path) {
+        PolicyEnforcerConfig.PathConfig pathConfig = new PolicyEnforcerConfig.PathConfig();
+        pathConfig.setPath(path);
+        pathConfig.setName(path);
+        for (String verb : List.of("GET", "HEAD")) {
+            PolicyEnforcerConfig.MethodConfig methodConfig = new PolicyEnforcerConfig.MethodConfig();
+            methodConfig.setMethod(verb);
+            methodConfig.setScopes(List.of("entity:read"));
+            pathConfig.getMethods().add(methodConfig);
+        }
+        return pathConfig;
+    }
+
+    @Test
+    void givenBaseline_onlyChangesAreReturned() {
+        AuthorizationSettingsDTO baseline = settings(resource("Car", "/cars/{id}", "car:read"), resource("Truck", "/trucks", "truck:read"));
+        AuthorizationSettingsDTO current = settings(resource("Car", "/cars/{id}", "car:update", "car:read"), resource("Bike", "/bikes", "bike:read"));
+
+        ConfigurationDeltaDTO delta = sut.generateDelta(baseline, current);
+
+        Assertions.assertEquals(sut.computeVersion(current), delta.getVersion());
+        Assertions.assertNotEquals(delta.getBaseVersion(), delta.getVersion());
+        Assertions.assertEquals("Bike", delta.getAddedResources().get(0).getName());
+        Assertions.assertEquals("Car", delta.getModifiedResources().get(0).getName());
+        Assertions.assertEquals(List.of("Truck"), delta.getRemovedResources());
+        Assertions.assertEquals(Set.of("car:update", "bike:read"), delta.getAddedScopes().stream().map(AuthorizationScopeDTO::getName).collect(Collectors.toSet()));
+        Assertions.assertEquals("truck:read", delta.getRemovedScopes().get(0).getName());
+
+        AuthorizationSettingsDTO reordered = settings(resource("Bike", "/bikes", "bike:read"), resource("Car", "/cars/{id}", "car:read", "car:update"));
+        Assertions.assertEquals(sut.computeVersion(current), sut.computeVersion(reordered));
+        Assertions.assertTrue(sut.generateDelta(current, reordered).getModifiedResources().isEmpty());
+    }
+
+    private AuthorizationSettingsDTO settings(AuthorizedResourceDTO... resources) {
+        AuthorizationSettingsDTO settings = new AuthorizationSettingsDTO();
+        settings.setResources(new ArrayList<>(Arrays.asList(resources)));
+        return settings;
+    }
+
+    private AuthorizedResourceDTO resource(String name, String uri, String... scopes) {
+        AuthorizedResourceDTO resource = new AuthorizedResourceDTO();
+        resource.setName(name);
+        resource.setUris(List.of(uri));
+        List<AuthorizationScopeDTO> scopeDTOs = new ArrayList<>();
+        for (String scope : scopes) {
+            AuthorizationScopeDTO scopeDTO = new AuthorizationScopeDTO();
+            scopeDTO.setName(scope);
+            scopeDTOs.add(scopeDTO);
+        }
+        resource.setScopes(scopeDTOs);
+        return resource;
+    }
 }
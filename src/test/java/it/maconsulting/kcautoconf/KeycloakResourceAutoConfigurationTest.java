@@ -16,6 +16,8 @@
 package it.maconsulting.kcautoconf;
 
 import it.maconsulting.kcautoconf.fixtures.*;
+import it.maconsulting.kcautoconf.scan.ControllerDiscoveryMode;
+import it.maconsulting.kcautoconf.scan.ResourceGranularity;
 import it.maconsulting.kcautoconf.services.AutoconfigurationService;
 import it.maconsulting.kcautoconf.services.SwaggerOperationService;
 import it.maconsulting.kcautoconf.services.SwaggerV2OperationService;
@@ -24,13 +26,20 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.keycloak.adapters.springboot.KeycloakSpringBootProperties;
 import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
 import org.mockito.Mockito;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
 
+import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -152,9 +161,9 @@ class KeycloakResourceAutoConfigurationTest {
         Assertions.assertNotNull(paths);
         Assertions.assertFalse(paths.isEmpty());
         Assertions.assertEquals(3, paths.size());
-        Assertions.assertEquals("/foo", paths.get(0).getPath());
-        Assertions.assertEquals("/bar", paths.get(1).getPath());
-        Assertions.assertEquals("/myAwesomeMapping", paths.get(2).getPath());
+        Assertions.assertEquals("/myAwesomeMapping", paths.get(0).getPath());
+        Assertions.assertEquals("/foo", paths.get(1).getPath());
+        Assertions.assertEquals("/bar", paths.get(2).getPath());
     }
 
     @Test
@@ -194,4 +203,170 @@ class KeycloakResourceAutoConfigurationTest {
         paths.forEach(path -> Assertions.assertEquals("/", path.getPath()));
     }
 
-}
\ No newline at end of file
+    @Test
+    void givenHandlerMappingDiscovery_inheritedMappingsAreCreated() throws Exception {
+        swaggerOperationServices.add(swaggerV3OperationService);
+        GenericApplicationContext webContext = new GenericApplicationContext();
+        webContext.registerBean(ControllerWithInterfaceMappings.class);
+        webContext.refresh();
+        RequestMappingHandlerMapping handlerMapping = new RequestMappingHandlerMapping();
+        handlerMapping.setApplicationContext(webContext);
+        handlerMapping.afterPropertiesSet();
+
+        Mockito.when(context.getBeansOfType(RequestMappingHandlerMapping.class)).thenReturn(Map.of("handlerMapping", handlerMapping));
+        ReflectionTestUtils.setField(autoconfigurationService, "discoveryMode", ControllerDiscoveryMode.HANDLER_MAPPING);
+        autoconfigurationService.updateKeycloakConfiguration();
+
+        List<PolicyEnforcerConfig.PathConfig> paths = sut.kcProperties().getPolicyEnforcerConfig().getPaths();
+        Assertions.assertEquals(1, paths.size());
+        Assertions.assertEquals("/inherited/{id}", paths.get(0).getPath());
+        Assertions.assertEquals("Inherited Getter", paths.get(0).getName());
+        Assertions.assertEquals("GET", paths.get(0).getMethods().get(0).getMethod());
+        Assertions.assertEquals("entity:read", paths.get(0).getMethods().get(0).getScopes().get(0));
+
+        HandlerMethod interfaceMethod = new HandlerMethod(webContext.getBean(ControllerWithInterfaceMappings.class),
+                ApiWithInterfaceMappings.class.getMethod("get", String.class));
+        Assertions.assertSame(paths.get(0),
+                autoconfigurationService.getHandlerMethodRegistry().resolve(interfaceMethod, null, "GET").getPathConfig());
+    }
+
+    @Test
+    void givenScanCache_handlerMethodsAreBoundOnAHit(@TempDir Path directory) throws Exception {
+        swaggerOperationServices.add(swaggerV3OperationService);
+        ControllerV3WithAuthzScopes controller = new ControllerV3WithAuthzScopes();
+        Mockito.when(context.getBeansWithAnnotation(Mockito.any())).thenReturn(Map.of("ControllerWithAuthzScopes", controller));
+        String cacheFile = directory.resolve("scan.cache").toString();
+        ReflectionTestUtils.setField(autoconfigurationService, "scanCacheFile", cacheFile);
+        autoconfigurationService.updateKeycloakConfiguration();
+
+        KeycloakSpringBootProperties properties = new KeycloakSpringBootProperties();
+        properties.setPolicyEnforcerConfig(new PolicyEnforcerConfig());
+        AutoconfigurationService cached = new AutoconfigurationService(context, properties, swaggerOperationServices);
+        ReflectionTestUtils.setField(cached, "scanCacheFile", cacheFile);
+        cached.updateKeycloakConfiguration();
+
+        HandlerMethod handlerMethod = new HandlerMethod(controller, ControllerV3WithAuthzScopes.class.getMethod("get"));
+        Assertions.assertSame(properties.getPolicyEnforcerConfig().getPaths().get(0),
+                cached.getHandlerMethodRegistry().resolve(handlerMethod, null, "GET").getPathConfig());
+    }
+
+    @Test
+    void givenParallelScan_resourcesAreCreatedInTheSerialOrder() {
+        swaggerOperationServices.add(swaggerV3OperationService);
+        Map<String, Object> beansWithAnnotation = new LinkedHashMap<>();
+        beansWithAnnotation.put("ControllerWithMultiplePathsInRequestMapping", new ControllerWithMultiplePathsInRequestMapping());
+        beansWithAnnotation.put("ControllerWithSingleRequestMapping", new ControllerWithSingleRequestMapping());
+        beansWithAnnotation.put("ControllerWithoutRequestMapping", new ControllerWithoutRequestMapping());
+        beansWithAnnotation.put("ControllerWithMultiplePathOnMethod", new ControllerWithMultiplePathOnMethod());
+        beansWithAnnotation.put("ControllerV3WithAuthzScopes", new ControllerV3WithAuthzScopes());
+        Mockito.when(context.getBeansWithAnnotation(Mockito.any())).thenReturn(beansWithAnnotation);
+
+        autoconfigurationService.updateKeycloakConfiguration();
+        List<String> serial = describe(sut.kcProperties().getPolicyEnforcerConfig().getPaths());
+        sut.kcProperties().getPolicyEnforcerConfig().getPaths().clear();
+        ReflectionTestUtils.setField(autoconfigurationService, "scanParallelism", 4);
+        autoconfigurationService.updateKeycloakConfiguration();
+
+        Assertions.assertEquals(serial, describe(sut.kcProperties().getPolicyEnforcerConfig().getPaths()));
+
+        Set<String> unitOrder = new LinkedHashSet<>();
+        beansWithAnnotation.forEach((name, controller) -> unitOrder.addAll(scanAlone(name, controller)));
+        Assertions.assertEquals(new ArrayList<>(unitOrder), sut.kcProperties().getPolicyEnforcerConfig().getPaths().stream()
+                .map(PolicyEnforcerConfig.PathConfig::getPath)
+                .collect(Collectors.toList()));
+    }
+
+    private List<String> scanAlone(String name, Object controller) {
+        ApplicationContext singleControllerContext = Mockito.mock(ApplicationContext.class);
+        Mockito.when(singleControllerContext.getBeansWithAnnotation(Mockito.any())).thenReturn(Map.of(name, controller));
+        KeycloakSpringBootProperties properties = new KeycloakSpringBootProperties();
+        properties.setPolicyEnforcerConfig(new PolicyEnforcerConfig());
+        new AutoconfigurationService(singleControllerContext, properties, swaggerOperationServices).updateKeycloakConfiguration();
+        return properties.getPolicyEnforcerConfig().getPaths().stream()
+                .map(PolicyEnforcerConfig.PathConfig::getPath)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void givenAsyncScan_resourcesArePublishedByTheReadinessGate() {
+        Map<String, Object> beansWithAnnotation = new HashMap<>();
+        beansWithAnnotation.put("ControllerWithSingleRequestMapping", new ControllerWithSingleRequestMapping());
+        Mockito.when(context.getBeansWithAnnotation(Mockito.any())).thenReturn(beansWithAnnotation);
+        ReflectionTestUtils.setField(autoconfigurationService, "asyncScan", true);
+
+        autoconfigurationService.startKeycloakConfiguration();
+        Assertions.assertTrue(autoconfigurationService.isKeycloakConfigurationPending());
+        Mockito.verify(context).publishEvent(Mockito.any(AvailabilityChangeEvent.class));
+
+        sut.scanReadinessGate().start();
+        Assertions.assertFalse(autoconfigurationService.isKeycloakConfigurationPending());
+        List<PolicyEnforcerConfig.PathConfig> paths = sut.kcProperties().getPolicyEnforcerConfig().getPaths();
+        Assertions.assertEquals(1, paths.size());
+        Assertions.assertEquals("/myAwesomeMapping", paths.get(0).getPath());
+    }
+
+    @Test
+    void givenResourceGranularity_pathsAreNamedAfterIt() {
+        swaggerOperationServices.add(swaggerV3OperationService);
+        Map<String, Object> beansWithAnnotation = new HashMap<>();
+        beansWithAnnotation.put("ControllerWithAuthzScopes", new ControllerV3WithAuthzScopes());
+        beansWithAnnotation.put("ControllerWithSingleRequestMapping", new ControllerWithSingleRequestMapping());
+        Mockito.when(context.getBeansWithAnnotation(Mockito.any())).thenReturn(beansWithAnnotation);
+        ReflectionTestUtils.setField(autoconfigurationService, "resourceGranularity", ResourceGranularity.TAG);
+
+        autoconfigurationService.updateKeycloakConfiguration();
+
+        Map<String, String> names = sut.kcProperties().getPolicyEnforcerConfig().getPaths().stream()
+                .collect(Collectors.toMap(PolicyEnforcerConfig.PathConfig::getPath, PolicyEnforcerConfig.PathConfig::getName));
+        Assertions.assertEquals("Entities", names.get("/authorized"));
+        Assertions.assertEquals("ControllerWithSingleRequestMapping", names.get("/myAwesomeMapping"));
+    }
+
+    @Test
+    void givenSmallPathCache_itIsSizedOnThePaths() {
+        swaggerOperationServices.add(swaggerV3OperationService);
+        Map<String, Object> beansWithAnnotation = new HashMap<>();
+        beansWithAnnotation.put("ControllerWithAuthzScopes", new ControllerV3WithAuthzScopes());
+        beansWithAnnotation.put("ControllerWithSingleRequestMapping", new ControllerWithSingleRequestMapping());
+        Mockito.when(context.getBeansWithAnnotation(Mockito.any())).thenReturn(beansWithAnnotation);
+        PolicyEnforcerConfig.PathCacheConfig pathCacheConfig = new PolicyEnforcerConfig.PathCacheConfig();
+        pathCacheConfig.setMaxEntries(1);
+        sut.kcProperties().getPolicyEnforcerConfig().setPathCacheConfig(pathCacheConfig);
+        ReflectionTestUtils.setField(autoconfigurationService, "pathCacheHeadroom", 1.0);
+        ReflectionTestUtils.setField(autoconfigurationService, "warmUp", true);
+
+        autoconfigurationService.updateKeycloakConfiguration();
+
+        int pathCount = sut.kcProperties().getPolicyEnforcerConfig().getPaths().size();
+        Assertions.assertEquals(2 * pathCount, pathCacheConfig.getMaxEntries());
+        Assertions.assertEquals(pathCount, autoconfigurationService.getScopeBitsets().getPathCount());
+    }
+
+    @Test
+    void givenPublicEndpoints_theirPathsAreDisabled() {
+        swaggerOperationServices.add(swaggerV3OperationService);
+        Map<String, Object> beansWithAnnotation = new HashMap<>();
+        beansWithAnnotation.put("ControllerV3WithPublicEndpoints", new ControllerV3WithPublicEndpoints());
+        beansWithAnnotation.put("ControllerWithSingleRequestMapping", new ControllerWithSingleRequestMapping());
+        Mockito.when(context.getBeansWithAnnotation(Mockito.any())).thenReturn(beansWithAnnotation);
+        ReflectionTestUtils.setField(autoconfigurationService, "publicPaths", new String[]{"/myAwesome*"});
+
+        autoconfigurationService.updateKeycloakConfiguration();
+
+        Map<String, PolicyEnforcerConfig.EnforcementMode> modes = sut.kcProperties().getPolicyEnforcerConfig().getPaths().stream()
+                .collect(Collectors.toMap(PolicyEnforcerConfig.PathConfig::getPath, PolicyEnforcerConfig.PathConfig::getEnforcementMode));
+        Assertions.assertEquals(PolicyEnforcerConfig.EnforcementMode.DISABLED, modes.get("/public/health"));
+        Assertions.assertEquals(PolicyEnforcerConfig.EnforcementMode.DISABLED, modes.get("/public/info"));
+        Assertions.assertEquals(PolicyEnforcerConfig.EnforcementMode.ENFORCING, modes.get("/public"));
+        Assertions.assertEquals(PolicyEnforcerConfig.EnforcementMode.DISABLED, modes.get("/myAwesomeMapping"));
+    }
+
+    private List<String> describe(List<PolicyEnforcerConfig.PathConfig> paths) {
+        return paths.stream()
+                .map(path -> path.getPath() + " " + path.getName() + " " + path.getMethods().stream()
+                        .map(method -> method.getMethod() + method.getScopes())
+                        .collect(Collectors.joining(",")))
+                .collect(Collectors.toList());
+    }
+
+}
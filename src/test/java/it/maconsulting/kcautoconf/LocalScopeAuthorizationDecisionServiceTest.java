@@ -0,0 +1,124 @@
+package it.maconsulting.kcautoconf;
+
+import it.maconsulting.kcautoconf.enforcement.AuthorizationDecisionService;
+import it.maconsulting.kcautoconf.enforcement.EnforcementRequest;
+import it.maconsulting.kcautoconf.enforcement.EnforcementTarget;
+import it.maconsulting.kcautoconf.enforcement.LocalScopeAuthorizationDecisionService;
+import it.maconsulting.kcautoconf.fixtures.ControllerV3WithAuthzScopes;
+import it.maconsulting.kcautoconf.services.AutoconfigurationService;
+import it.maconsulting.kcautoconf.services.SwaggerV3OperationService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.adapters.springboot.KeycloakSpringBootProperties;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+import org.keycloak.representations.idm.authorization.Permission;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+class LocalScopeAuthorizationDecisionServiceTest {
+
+    private AuthorizationDecisionService remoteDecisionService;
+
+    private EnforcementTarget target;
+
+    private LocalScopeAuthorizationDecisionService sut;
+
+    private AutoconfigurationService autoconfigurationService;
+
+    @BeforeEach
+    public void setup() {
+        KeycloakSpringBootProperties keycloakSpringBootProperties = new KeycloakSpringBootProperties();
+        keycloakSpringBootProperties.setPolicyEnforcerConfig(new PolicyEnforcerConfig());
+        ApplicationContext context = Mockito.mock(ApplicationContext.class);
+        Mockito.when(context.getBeansWithAnnotation(Mockito.any())).thenReturn(Map.of("controller", new ControllerV3WithAuthzScopes()));
+        autoconfigurationService = new AutoconfigurationService(context,
+                keycloakSpringBootProperties, List.of(new SwaggerV3OperationService()));
+        autoconfigurationService.updateKeycloakConfiguration();
+
+        remoteDecisionService = Mockito.mock(AuthorizationDecisionService.class);
+        sut = new LocalScopeAuthorizationDecisionService(autoconfigurationService, remoteDecisionService);
+        target = EnforcementTarget.of(keycloakSpringBootProperties.getPolicyEnforcerConfig().getPaths().get(0), "GET");
+    }
+
+    @Test
+    void givenTokenPermissions_requestIsAuthorizedLocally() {
+        Assertions.assertTrue(sut.isAuthorized(request(rpt(new Permission(null, "Other", Set.of("entity:write"), null),
+                new Permission(null, "Entity Getter", Set.of("entity:read"), null)), false)));
+        Assertions.assertFalse(sut.isAuthorized(request(rpt(new Permission(null, "Other", Set.of("entity:read"), null)), false)));
+        Assertions.assertFalse(sut.isAuthorized(request(rpt(new Permission(null, "Entity Getter", Set.of("entity:write"), null)), false)));
+
+        Mockito.verifyNoInteractions(remoteDecisionService);
+    }
+
+    @Test
+    void givenScopeClaimOnly_requestIsDelegated() {
+        Assertions.assertFalse(sut.isAuthorized(request(token("openid entity:read"), false)));
+        Mockito.when(remoteDecisionService.isAuthorized(Mockito.any())).thenReturn(true);
+        Assertions.assertTrue(sut.isAuthorized(request(token("openid entity:read"), false)));
+
+        Mockito.verify(remoteDecisionService, Mockito.times(2)).isAuthorized(Mockito.any());
+    }
+
+    @Test
+    void givenVerbWithoutMethodConfig_anyPathScopeIsEnough() {
+        PolicyEnforcerConfig.PathConfig pathConfig = new PolicyEnforcerConfig.PathConfig();
+        pathConfig.setPath("/entities");
+        pathConfig.setName("Entities");
+        pathConfig.setScopes(List.of("entity:read", "entity:write"));
+        autoconfigurationService.getPolicyEnforcerConfig().getPaths().add(pathConfig);
+        target = EnforcementTarget.of(pathConfig, "GET");
+
+        Assertions.assertTrue(sut.isAuthorized(request(rpt(new Permission(null, "Entities", Set.of("entity:read"), null)), false)));
+        Assertions.assertFalse(sut.isAuthorized(request(rpt(new Permission(null, "Entities", Set.of("entity:delete"), null)), false)));
+
+        Mockito.verifyNoInteractions(remoteDecisionService);
+    }
+
+    @Test
+    void givenResolvedResourceId_permissionsAreMatchedById() {
+        target = target.withResourceId("id-1");
+
+        Assertions.assertFalse(sut.isAuthorized(request(rpt(new Permission("id-2", "Entity Getter", Set.of("entity:read"), null)), false)));
+        Assertions.assertTrue(sut.isAuthorized(request(rpt(new Permission("id-1", null, Set.of("entity:read"), null)), false)));
+    }
+
+    @Test
+    void givenRemoteRequirement_requestIsDelegated() {
+        Mockito.when(remoteDecisionService.isAuthorized(Mockito.any())).thenReturn(true);
+
+        Assertions.assertTrue(sut.isAuthorized(request(token("openid"), true)));
+        Assertions.assertTrue(sut.isAuthorized(request(null, false)));
+
+        target.getPathConfig().setName(null);
+        Assertions.assertTrue(sut.isAuthorized(request(rpt(new Permission(null, null, Set.of("entity:read"), null)), false)));
+
+        Mockito.verify(remoteDecisionService, Mockito.times(3)).isAuthorized(Mockito.any());
+    }
+
+    private AccessToken token(String scope) {
+        AccessToken accessToken = new AccessToken();
+        accessToken.setScope(scope);
+        return accessToken;
+    }
+
+    private AccessToken rpt(Permission... permissions) {
+        AccessToken rpt = token(null);
+        rpt.setAuthorization(new AccessToken.Authorization());
+        rpt.getAuthorization().setPermissions(List.of(permissions));
+        return rpt;
+    }
+
+    private EnforcementRequest request(AccessToken accessToken, boolean remoteRequired) {
+        return new EnforcementRequest("token", accessToken, target, "GET", remoteRequired);
+    }
+}
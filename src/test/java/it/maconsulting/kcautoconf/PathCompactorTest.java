@@ -0,0 +1,73 @@
+package it.maconsulting.kcautoconf;
+
+import it.maconsulting.kcautoconf.scan.PathCompactor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+class PathCompactorTest {
+
+    private final List<PolicyEnforcerConfig.PathConfig> paths = List.of(
+            pathConfig("/cars", "Cars", "POST", "car:create"),
+            pathConfig("/cars/{id}", "Car", "GET", "car:read"),
+            pathConfig("/trucks/{id}", "Truck", "GET", "truck:read"),
+            pathConfig("/cars/{id}/wheels", "Car", "GET", "car:read"),
+            pathConfig("/trucks/{id}/doors", "Truck", "POST", "truck:update"));
+
+    @Test
+    void givenSubtreeWithSameRequirements_itIsMerged() {
+        PathCompactor sut = new PathCompactor(List.of(pathConfig("/mac/configuration/export")));
+
+        List<PolicyEnforcerConfig.PathConfig> compacted = sut.compact(paths);
+
+        Assertions.assertEquals(List.of("/cars", "/cars/*", "/trucks/{id}", "/trucks/{id}/doors"), paths(compacted));
+        Assertions.assertEquals("Car", compacted.get(1).getName());
+        Assertions.assertEquals(List.of("car:read"), compacted.get(1).getMethods().get(0).getScopes());
+        Assertions.assertEquals("/cars/*", sut.getReplacedPaths().get("/cars/{id}/wheels"));
+    }
+
+    @Test
+    void givenPathMatchingUnderPrefix_subtreeIsNotMerged() {
+        Assertions.assertEquals(paths(paths), paths(new PathCompactor(List.of(pathConfig("/{tenant}/info"))).compact(paths)));
+        Assertions.assertEquals(paths(paths), paths(new PathCompactor(List.of(pathConfig("/cars/*"))).compact(paths)));
+    }
+
+    @Test
+    void givenCatchAll_subtreeIsMergedOnlyWithTheSameRequirements() {
+        PolicyEnforcerConfig.PathConfig disabledCatchAll = pathConfig("/*");
+        disabledCatchAll.setEnforcementMode(PolicyEnforcerConfig.EnforcementMode.DISABLED);
+        Assertions.assertEquals(paths(paths), paths(new PathCompactor(List.of(disabledCatchAll)).compact(paths)));
+
+        PolicyEnforcerConfig.PathConfig carCatchAll = pathConfig("/*", "Car", "GET", "car:read");
+        Assertions.assertEquals(List.of("/cars", "/cars/*", "/trucks/{id}", "/trucks/{id}/doors"),
+                paths(new PathCompactor(List.of(carCatchAll)).compact(paths)));
+    }
+
+    private List<String> paths(List<PolicyEnforcerConfig.PathConfig> pathConfigs) {
+        return pathConfigs.stream().map(PolicyEnforcerConfig.PathConfig::getPath).collect(Collectors.toList());
+    }
+
+    private PolicyEnforcerConfig.PathConfig pathConfig(String path) {
+        PolicyEnforcerConfig.PathConfig pathConfig = new PolicyEnforcerConfig.PathConfig();
+        pathConfig.setPath(path);
+        return pathConfig;
+    }
+
+    private PolicyEnforcerConfig.PathConfig pathConfig(String path, String name, String method, String scope) {
+        PolicyEnforcerConfig.PathConfig pathConfig = new PolicyEnforcerConfig.PathConfig();
+        pathConfig.setPath(path);
+        pathConfig.setName(name);
+        PolicyEnforcerConfig.MethodConfig methodConfig = new PolicyEnforcerConfig.MethodConfig();
+        methodConfig.setMethod(method);
+        methodConfig.setScopes(List.of(scope));
+        pathConfig.getMethods().add(methodConfig);
+        return pathConfig;
+    }
+}
@@ -0,0 +1,43 @@
+package it.maconsulting.kcautoconf;
+
+import it.maconsulting.kcautoconf.scan.PathConfigCanonicalizer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+class PathConfigCanonicalizerTest {
+
+    @Test
+    void givenIdenticalMethods_theyAreShared() {
+        List<PolicyEnforcerConfig.PathConfig> paths = List.of(
+                pathConfig("/cars", new String("GET"), new String("car:read")),
+                pathConfig("/trucks", new String("GET"), new String("car:read")),
+                pathConfig("/bikes", "POST", "bike:create"));
+
+        PathConfigCanonicalizer.Report report = new PathConfigCanonicalizer().canonicalize(paths);
+
+        Assertions.assertSame(paths.get(0).getMethods().get(0), paths.get(1).getMethods().get(0));
+        Assertions.assertNotSame(paths.get(0).getMethods().get(0), paths.get(2).getMethods().get(0));
+        Assertions.assertEquals(List.of("car:read"), paths.get(1).getMethods().get(0).getScopes());
+        Assertions.assertEquals(3, report.getMethodConfigs());
+        Assertions.assertEquals(2, report.getSharedMethodConfigs());
+        Assertions.assertTrue(report.getSizeAfter() < report.getSizeBefore());
+    }
+
+    private PolicyEnforcerConfig.PathConfig pathConfig(String path, String verb, String scope) {
+        PolicyEnforcerConfig.PathConfig pathConfig = new PolicyEnforcerConfig.PathConfig();
+        pathConfig.setPath(path);
+        PolicyEnforcerConfig.MethodConfig methodConfig = new PolicyEnforcerConfig.MethodConfig();
+        methodConfig.setMethod(verb);
+        methodConfig.setScopes(new ArrayList<>(List.of(scope)));
+        pathConfig.getMethods().add(methodConfig);
+        return pathConfig;
+    }
+}
@@ -0,0 +1,69 @@
+package it.maconsulting.kcautoconf;
+
+import it.maconsulting.kcautoconf.enforcement.PathConfigIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.keycloak.common.util.PathMatcher;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+class PathConfigIndexTest {
+
+    @Test
+    void givenStaticAndTemplatePaths_theMostSpecificIsResolved() {
+        PolicyEnforcerConfig.PathConfig all = pathConfig("/*");
+        PolicyEnforcerConfig.PathConfig cars = pathConfig("/cars");
+        PolicyEnforcerConfig.PathConfig car = pathConfig("/cars/{id}");
+        PolicyEnforcerConfig.PathConfig create = pathConfig("/cars/create");
+        PolicyEnforcerConfig.PathConfig wheels = pathConfig("/cars/{id}/wheels/*");
+        PolicyEnforcerConfig.PathConfig pdf = pathConfig("/docs/*.pdf");
+
+        PathConfigIndex sut = PathConfigIndex.compile(List.of(all, cars, car, create, wheels, pdf));
+
+        Assertions.assertSame(cars, sut.resolve("/cars/"));
+        Assertions.assertSame(create, sut.resolve("/cars/create"));
+        Assertions.assertSame(car, sut.resolve("/cars/42"));
+        Assertions.assertSame(wheels, sut.resolve("/cars/42/wheels"));
+        Assertions.assertSame(wheels, sut.resolve("/cars/42/wheels/1/bolts"));
+        Assertions.assertSame(pdf, sut.resolve("/docs/manuals/car.pdf"));
+        Assertions.assertSame(all, sut.resolve("/cars/42/doors"));
+        Assertions.assertNull(PathConfigIndex.compile(List.of(cars)).resolve("/trucks"));
+    }
+
+    @Test
+    void givenPathsOutsideTheTrie_theyAreMatchedAsByTheAdapter() {
+        PolicyEnforcerConfig.PathConfig meta = pathConfig("/files/*/meta");
+        PolicyEnforcerConfig.PathConfig pdf = pathConfig("/docs/*.pdf");
+        List<PolicyEnforcerConfig.PathConfig> paths = List.of(meta, pdf);
+        PathMatcher<PolicyEnforcerConfig.PathConfig> adapter = new PathMatcher<>() {
+            @Override
+            protected String getPath(PolicyEnforcerConfig.PathConfig pathConfig) {
+                return pathConfig.getPath();
+            }
+
+            @Override
+            protected Collection<PolicyEnforcerConfig.PathConfig> getPaths() {
+                return paths;
+            }
+        };
+
+        PathConfigIndex sut = PathConfigIndex.compile(paths);
+
+        for (String path : List.of("/files/a/meta", "/files/a/b/meta", "/docs/a/b.pdf", "/docs/b.pdfx")) {
+            Assertions.assertSame(adapter.matches(path), sut.resolve(path), path);
+        }
+        Assertions.assertNull(sut.resolve("/files/a/b/meta"));
+    }
+
+    private PolicyEnforcerConfig.PathConfig pathConfig(String path) {
+        PolicyEnforcerConfig.PathConfig pathConfig = new PolicyEnforcerConfig.PathConfig();
+        pathConfig.setPath(path);
+        return pathConfig;
+    }
+}
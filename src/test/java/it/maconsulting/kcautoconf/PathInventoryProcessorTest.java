@@ -0,0 +1,91 @@
+package it.maconsulting.kcautoconf;
+
+import it.maconsulting.kcautoconf.processor.PathInventoryProcessor;
+import it.maconsulting.kcautoconf.scan.PathInventory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+class PathInventoryProcessorTest {
+
+    private static final String FIXTURES = "src/test/java/it/maconsulting/kcautoconf/fixtures/";
+
+    @TempDir
+    Path output;
+
+    @Test
+    void givenV3ControllerWithAuthzScopes_inventoryIsGenerated() throws Exception {
+        List<PolicyEnforcerConfig.PathConfig> paths = compile("ControllerV3WithAuthzScopes.java");
+
+        Assertions.assertEquals(1, paths.size());
+        PolicyEnforcerConfig.PathConfig path = paths.get(0);
+        Assertions.assertEquals("/authorized", path.getPath());
+        Assertions.assertEquals("Entity Getter", path.getName());
+        Assertions.assertEquals("GET", path.getMethods().get(0).getMethod());
+        Assertions.assertEquals(List.of("entity:read"), path.getMethods().get(0).getScopes());
+    }
+
+    @Test
+    void givenControllerWithMultiplePaths_inventoryIsGenerated() throws Exception {
+        List<PolicyEnforcerConfig.PathConfig> paths = compile("ControllerWithMultiplePathsInRequestMapping.java",
+                "ControllerWithSingleRequestMapping.java");
+
+        Assertions.assertEquals(3, paths.size());
+        Assertions.assertEquals("/myAwesomeMapping", paths.get(0).getPath());
+        Assertions.assertEquals("/foo", paths.get(1).getPath());
+        Assertions.assertEquals("/bar", paths.get(2).getPath());
+        Assertions.assertEquals(6, paths.get(0).getMethods().size());
+    }
+
+    @Test
+    void givenPublicEndpoints_theirPathsAreDisabled() throws Exception {
+        List<PolicyEnforcerConfig.PathConfig> paths = compile("ControllerV3WithPublicEndpoints.java");
+
+        Assertions.assertEquals(3, paths.size());
+        Assertions.assertEquals(PolicyEnforcerConfig.EnforcementMode.DISABLED, paths.get(0).getEnforcementMode());
+        Assertions.assertEquals(PolicyEnforcerConfig.EnforcementMode.DISABLED, paths.get(1).getEnforcementMode());
+        Assertions.assertEquals("/public", paths.get(2).getPath());
+        Assertions.assertEquals(PolicyEnforcerConfig.EnforcementMode.ENFORCING, paths.get(2).getEnforcementMode());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<PolicyEnforcerConfig.PathConfig> compile(String... fixtures) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+            File[] sources = new File[fixtures.length];
+            for (int i = 0; i < fixtures.length; i++) {
+                sources[i] = new File(FIXTURES + fixtures[i]);
+            }
+            List<String> options = List.of("-d", output.toString(), "-s", output.toString(),
+                    "-classpath", System.getProperty("java.class.path"), "-proc:only");
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null, options, null,
+                    fileManager.getJavaFileObjects(sources));
+            task.setProcessors(List.of(new PathInventoryProcessor()));
+            Assertions.assertTrue(task.call());
+
+            File generated = output.resolve(PathInventory.GENERATED_CLASS_NAME.replace('.', '/') + ".java").toFile();
+            Assertions.assertTrue(compiler.getTask(null, fileManager, null,
+                    List.of("-d", output.toString(), "-classpath", System.getProperty("java.class.path")), null,
+                    fileManager.getJavaFileObjects(generated)).call());
+        }
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{output.toUri().toURL()}, getClass().getClassLoader())) {
+            PathInventory inventory = (PathInventory) classLoader.loadClass(PathInventory.GENERATED_CLASS_NAME)
+                    .getDeclaredConstructor().newInstance();
+            return inventory.getPathConfigurations();
+        }
+    }
+}
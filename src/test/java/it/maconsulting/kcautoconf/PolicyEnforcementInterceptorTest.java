@@ -0,0 +1,231 @@
+package it.maconsulting.kcautoconf;
+
+import it.maconsulting.kcautoconf.enforcement.AuthorizationDecisionService;
+import it.maconsulting.kcautoconf.enforcement.DecisionUnavailableException;
+import it.maconsulting.kcautoconf.enforcement.EnforcementRequest;
+import it.maconsulting.kcautoconf.enforcement.LazyResourceIdResolver;
+import it.maconsulting.kcautoconf.enforcement.PolicyEnforcementInterceptor;
+import it.maconsulting.kcautoconf.enforcement.ResourceIdResolver;
+import it.maconsulting.kcautoconf.fixtures.ControllerV3WithAuthzScopes;
+import it.maconsulting.kcautoconf.services.AutoconfigurationService;
+import it.maconsulting.kcautoconf.services.JsonKeycloakConfigurationGenerator;
+import it.maconsulting.kcautoconf.services.SwaggerV3OperationService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.KeycloakSecurityContext;
+import org.keycloak.adapters.springboot.KeycloakSpringBootProperties;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+class PolicyEnforcementInterceptorTest {
+
+    private AuthorizationDecisionService authorizationDecisionService;
+
+    private PolicyEnforcementInterceptor sut;
+
+    private HandlerMethod handler;
+
+    private AutoconfigurationService autoconfigurationService;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        KeycloakSpringBootProperties keycloakSpringBootProperties = new KeycloakSpringBootProperties();
+        keycloakSpringBootProperties.setPolicyEnforcerConfig(new PolicyEnforcerConfig());
+        ControllerV3WithAuthzScopes controller = new ControllerV3WithAuthzScopes();
+        ApplicationContext context = Mockito.mock(ApplicationContext.class);
+        Mockito.when(context.getBeansWithAnnotation(Mockito.any())).thenReturn(Map.of("controller", controller));
+        autoconfigurationService = new AutoconfigurationService(context,
+                keycloakSpringBootProperties, List.of(new SwaggerV3OperationService()));
+        autoconfigurationService.updateKeycloakConfiguration();
+
+        authorizationDecisionService = Mockito.mock(AuthorizationDecisionService.class);
+        sut = new PolicyEnforcementInterceptor(autoconfigurationService, authorizationDecisionService);
+        handler = new HandlerMethod(controller, ControllerV3WithAuthzScopes.class.getMethod("get"));
+    }
+
+    @Test
+    void givenHandlerMethod_itsConfigurationIsEnforced() throws Exception {
+        Mockito.when(authorizationDecisionService.isAuthorized(Mockito.any())).thenReturn(true);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/authorized");
+        request.addHeader("Authorization", "Bearer token");
+
+        Assertions.assertTrue(sut.preHandle(request, new MockHttpServletResponse(), handler));
+
+        ArgumentCaptor<EnforcementRequest> captor = ArgumentCaptor.forClass(EnforcementRequest.class);
+        Mockito.verify(authorizationDecisionService).isAuthorized(captor.capture());
+        Assertions.assertEquals("token", captor.getValue().getToken());
+        Assertions.assertEquals("/authorized", captor.getValue().getTarget().getPathConfig().getPath());
+        Assertions.assertEquals(List.of("entity:read"), captor.getValue().getTarget().getRequiredScopes());
+        Assertions.assertSame(captor.getValue().getTarget(), sut.resolveTarget(new MockHttpServletRequest("GET", "/elsewhere"), handler));
+        Assertions.assertEquals("/authorized", sut.resolveTarget(request, new Object()).getPathConfig().getPath());
+    }
+
+    @Test
+    void givenTokenNotVerifiedByTheAdapter_itsContentIsNotRead() throws Exception {
+        Mockito.when(authorizationDecisionService.isAuthorized(Mockito.any())).thenReturn(true);
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String forged = encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "." +
+                encoder.encodeToString("{\"scope\":\"entity:read\",\"exp\":9999999999}".getBytes(StandardCharsets.UTF_8)) + ".";
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/authorized");
+        request.addHeader("Authorization", "Bearer " + forged);
+        sut.preHandle(request, new MockHttpServletResponse(), handler);
+
+        AccessToken verified = new AccessToken();
+        MockHttpServletRequest authenticated = new MockHttpServletRequest("GET", "/authorized");
+        authenticated.setAttribute(KeycloakSecurityContext.class.getName(), new KeycloakSecurityContext("verified", verified, null, null));
+        sut.preHandle(authenticated, new MockHttpServletResponse(), handler);
+
+        ArgumentCaptor<EnforcementRequest> captor = ArgumentCaptor.forClass(EnforcementRequest.class);
+        Mockito.verify(authorizationDecisionService, Mockito.times(2)).isAuthorized(captor.capture());
+        Assertions.assertEquals(forged, captor.getAllValues().get(0).getToken());
+        Assertions.assertNull(captor.getAllValues().get(0).getAccessToken());
+        Assertions.assertEquals("verified", captor.getAllValues().get(1).getToken());
+        Assertions.assertSame(verified, captor.getAllValues().get(1).getAccessToken());
+    }
+
+    @Test
+    void givenMissingTokenOrDeniedDecision_requestIsRejected() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        Assertions.assertFalse(sut.preHandle(new MockHttpServletRequest("GET", "/authorized"), response, handler));
+        Assertions.assertEquals(401, response.getStatus());
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/authorized");
+        request.addHeader("Authorization", "Bearer token");
+        response = new MockHttpServletResponse();
+        Assertions.assertFalse(sut.preHandle(request, response, handler));
+        Assertions.assertEquals(403, response.getStatus());
+
+        Mockito.when(authorizationDecisionService.isAuthorized(Mockito.any())).thenThrow(new DecisionUnavailableException("timeout"));
+        response = new MockHttpServletResponse();
+        Assertions.assertFalse(sut.preHandle(request, response, handler));
+        Assertions.assertEquals(503, response.getStatus());
+    }
+
+    @Test
+    void givenPermissiveOrDisabledModes_deniedRequestsAreLetThrough() throws Exception {
+        Mockito.when(authorizationDecisionService.isAuthorized(Mockito.any())).thenReturn(false);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/authorized");
+        request.addHeader("Authorization", "Bearer token");
+        PolicyEnforcerConfig.PathConfig pathConfig = autoconfigurationService.getPolicyEnforcerConfig().getPaths().get(0);
+
+        pathConfig.setEnforcementMode(PolicyEnforcerConfig.EnforcementMode.PERMISSIVE);
+        Assertions.assertTrue(sut.preHandle(request, new MockHttpServletResponse(), handler));
+        Assertions.assertTrue(sut.preHandle(new MockHttpServletRequest("GET", "/authorized"), new MockHttpServletResponse(), handler));
+
+        pathConfig.setEnforcementMode(PolicyEnforcerConfig.EnforcementMode.ENFORCING);
+        sut = interceptor(PolicyEnforcerConfig.EnforcementMode.PERMISSIVE);
+        Assertions.assertTrue(sut.preHandle(request, new MockHttpServletResponse(), handler));
+        Mockito.verify(authorizationDecisionService, Mockito.times(2)).isAuthorized(Mockito.any());
+
+        sut = interceptor(PolicyEnforcerConfig.EnforcementMode.DISABLED);
+        Assertions.assertTrue(sut.preHandle(new MockHttpServletRequest("GET", "/elsewhere"), new MockHttpServletResponse(), new Object()));
+        Assertions.assertTrue(sut.preHandle(request, new MockHttpServletResponse(), handler));
+        Mockito.verify(authorizationDecisionService, Mockito.times(2)).isAuthorized(Mockito.any());
+
+        sut = interceptor(PolicyEnforcerConfig.EnforcementMode.ENFORCING);
+        Assertions.assertFalse(sut.preHandle(request, new MockHttpServletResponse(), handler));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenEnforcementConfiguration_theAdapterNoLongerEnforcesThePaths() throws Exception {
+        KeycloakSpringBootProperties keycloakSpringBootProperties = autoconfigurationService.getKeycloakSpringBootProperties();
+        PolicyEnforcerConfig policyEnforcerConfig = keycloakSpringBootProperties.getPolicyEnforcerConfig();
+        policyEnforcerConfig.setEnforcementMode(PolicyEnforcerConfig.EnforcementMode.DISABLED);
+        ObjectProvider<AuthorizationDecisionService> decisionServices = Mockito.mock(ObjectProvider.class);
+        new KeycloakPolicyEnforcementConfiguration(autoconfigurationService, decisionServices).afterPropertiesSet();
+
+        Assertions.assertNull(keycloakSpringBootProperties.getPolicyEnforcerConfig());
+        Assertions.assertSame(policyEnforcerConfig, autoconfigurationService.getPolicyEnforcerConfig());
+        Assertions.assertFalse(new JsonKeycloakConfigurationGenerator(keycloakSpringBootProperties, autoconfigurationService)
+                .generateConfigurationAsJson().getResources().isEmpty());
+
+        Mockito.when(authorizationDecisionService.isAuthorized(Mockito.any())).thenReturn(false);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/authorized");
+        request.addHeader("Authorization", "Bearer token");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        Assertions.assertFalse(sut.preHandle(request, response, handler));
+        Assertions.assertEquals(403, response.getStatus());
+    }
+
+    private PolicyEnforcementInterceptor interceptor(PolicyEnforcerConfig.EnforcementMode enforcementMode) {
+        return new PolicyEnforcementInterceptor(autoconfigurationService, authorizationDecisionService, null, enforcementMode);
+    }
+
+    @Test
+    void givenLazyResourceIds_theyAreListedOnceOnDemand() throws Exception {
+        ResourceIdResolver resourceIdResolver = Mockito.mock(ResourceIdResolver.class);
+        Mockito.when(resourceIdResolver.fetchResourceIds()).thenReturn(ResourceIdResolver.ResourceIds.EMPTY);
+        Clock clock = Mockito.mock(Clock.class);
+        Mockito.when(clock.millis()).thenReturn(1000L, 2000L, 70000L);
+        sut = new PolicyEnforcementInterceptor(autoconfigurationService, authorizationDecisionService,
+                new LazyResourceIdResolver(resourceIdResolver, Runnable::run, Duration.ofSeconds(1), Duration.ofMinutes(1), clock));
+        Mockito.when(authorizationDecisionService.isAuthorized(Mockito.any())).thenReturn(true);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/authorized");
+        request.addHeader("Authorization", "Bearer token");
+
+        sut.preHandle(request, new MockHttpServletResponse(), handler);
+        sut.preHandle(request, new MockHttpServletResponse(), handler);
+        Mockito.verify(resourceIdResolver, Mockito.times(1)).fetchResourceIds();
+
+        sut.preHandle(request, new MockHttpServletResponse(), handler);
+        Mockito.verify(resourceIdResolver, Mockito.times(2)).fetchResourceIds();
+
+        long version = autoconfigurationService.getConfigurationVersion();
+        Mockito.when(resourceIdResolver.fetchResourceIds()).thenReturn(new ResourceIdResolver.ResourceIds(
+                Map.of("Entity Getter", "id"), Map.of(), 1));
+        Mockito.when(clock.millis()).thenReturn(140000L);
+        sut.preHandle(request, new MockHttpServletResponse(), handler);
+        sut.preHandle(request, new MockHttpServletResponse(), handler);
+        Mockito.verify(resourceIdResolver, Mockito.times(3)).fetchResourceIds();
+
+        ArgumentCaptor<EnforcementRequest> captor = ArgumentCaptor.forClass(EnforcementRequest.class);
+        Mockito.verify(authorizationDecisionService, Mockito.times(5)).isAuthorized(captor.capture());
+        Assertions.assertNull(captor.getAllValues().get(2).getTarget().getResourceId());
+        Assertions.assertEquals("id", captor.getAllValues().get(3).getTarget().getResourceId());
+        Assertions.assertEquals("id", captor.getAllValues().get(4).getTarget().getResourceId());
+        Assertions.assertNull(captor.getValue().getTarget().getPathConfig().getId());
+        Assertions.assertEquals(version, autoconfigurationService.getConfigurationVersion());
+    }
+
+    @Test
+    void givenSlowListing_requestsShareItAndDoNotWaitBeyondTheLimit() throws Exception {
+        ResourceIdResolver resourceIdResolver = Mockito.mock(ResourceIdResolver.class);
+        Mockito.when(resourceIdResolver.fetchResourceIds()).thenReturn(new ResourceIdResolver.ResourceIds(
+                Map.of("Entity Getter", "id"), Map.of(), 1));
+        List<Runnable> listings = new ArrayList<>();
+        LazyResourceIdResolver lazyResourceIdResolver = new LazyResourceIdResolver(resourceIdResolver, listings::add,
+                Duration.ofMillis(10), Duration.ofMinutes(1), Clock.systemUTC());
+        PolicyEnforcerConfig.PathConfig pathConfig = autoconfigurationService.getKeycloakSpringBootProperties()
+                .getPolicyEnforcerConfig().getPaths().get(0);
+
+        Assertions.assertNull(lazyResourceIdResolver.getResourceId(pathConfig));
+        Assertions.assertNull(lazyResourceIdResolver.getResourceId(pathConfig));
+        Assertions.assertEquals(1, listings.size());
+
+        listings.get(0).run();
+        Assertions.assertEquals("id", lazyResourceIdResolver.getResourceId(pathConfig));
+        Assertions.assertEquals(1, listings.size());
+        Assertions.assertNull(pathConfig.getId());
+    }
+}
@@ -0,0 +1,167 @@
+package it.maconsulting.kcautoconf;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import it.maconsulting.kcautoconf.enforcement.ResourceIdResolver;
+import it.maconsulting.kcautoconf.fixtures.ControllerV2WithAuthzScopes;
+import it.maconsulting.kcautoconf.pojo.AuthorizationSettingsDTO;
+import it.maconsulting.kcautoconf.pojo.AuthorizedResourceDTO;
+import it.maconsulting.kcautoconf.services.AutoconfigurationService;
+import it.maconsulting.kcautoconf.services.ExportIndex;
+import it.maconsulting.kcautoconf.services.JsonKeycloakConfigurationGenerator;
+import it.maconsulting.kcautoconf.services.SwaggerV2OperationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.adapters.springboot.KeycloakSpringBootProperties;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+class ResourceIdResolverTest {
+
+    private static final Pattern PAGE = Pattern.compile("first=(\\d+)&max=(\\d+)");
+    private static final int RESOURCES = 7;
+
+    private HttpServer server;
+    private final Queue<String> requests = new ConcurrentLinkedQueue<>();
+    private volatile String firstResourceName = "Resource 0";
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/realms/test/protocol/openid-connect/token", exchange -> {
+            requests.add("token");
+            respond(exchange, 200, "{\"access_token\":\"pat\"}");
+        });
+        server.createContext("/realms/test/authz/protection/resource_set", exchange -> {
+            if (!"Bearer pat".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                respond(exchange, 401, "");
+                return;
+            }
+            Matcher matcher = PAGE.matcher(exchange.getRequestURI().getQuery());
+            Assertions.assertTrue(matcher.find());
+            int first = Integer.parseInt(matcher.group(1));
+            int max = Integer.parseInt(matcher.group(2));
+            requests.add("page " + first);
+            respond(exchange, 200, IntStream.range(first, Math.min(first + max, RESOURCES))
+                    .mapToObj(i -> "{\"_id\":\"id-" + i + "\",\"name\":\"" + (i == 0 ? firstResourceName : "Resource " + i) +
+                            "\",\"uris\":[\"/resources/" + i + "\"]}")
+                    .collect(Collectors.joining(",", "[", "]")));
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void teardown() {
+        server.stop(0);
+    }
+
+    @Test
+    void givenClientResources_pathIdsAreResolvedInBulk() {
+        ResourceIdResolver sut = new ResourceIdResolver(realmUri(), "client", "secret", HttpClient.newHttpClient(),
+                Duration.ofSeconds(5), 2, 2);
+        PolicyEnforcerConfig.PathConfig named = path("/anything", "Resource 1");
+        PolicyEnforcerConfig.PathConfig unnamed = path("/resources/6", null);
+        PolicyEnforcerConfig.PathConfig unknown = path("/unknown", "Unknown");
+
+        int resolved = sut.resolve(List.of(named, unnamed, unknown));
+
+        Assertions.assertEquals(2, resolved);
+        Assertions.assertEquals("id-1", named.getId());
+        Assertions.assertEquals("id-6", unnamed.getId());
+        Assertions.assertNull(unknown.getId());
+        Assertions.assertEquals(List.of("page 0", "page 2", "page 4", "page 6", "token"),
+                requests.stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    void givenUnreachableProtectionApi_pathsAreLeftUnchanged() {
+        server.removeContext("/realms/test/protocol/openid-connect/token");
+        ResourceIdResolver sut = new ResourceIdResolver(realmUri(), "client", "secret", HttpClient.newHttpClient(),
+                Duration.ofSeconds(5), 2, 2);
+        PolicyEnforcerConfig.PathConfig named = path("/anything", "Resource 1");
+
+        Assertions.assertEquals(0, sut.resolve(List.of(named)));
+        Assertions.assertNull(named.getId());
+    }
+
+    @Test
+    void givenResolvedIds_pathsAreStillExported() {
+        firstResourceName = "Entity Reader";
+        KeycloakSpringBootProperties keycloakSpringBootProperties = new KeycloakSpringBootProperties();
+        keycloakSpringBootProperties.setAuthServerUrl("http://localhost:" + server.getAddress().getPort());
+        keycloakSpringBootProperties.setRealm("test");
+        keycloakSpringBootProperties.setResource("client");
+        keycloakSpringBootProperties.setCredentials(Map.of("secret", "secret"));
+        PolicyEnforcerConfig policyEnforcerConfig = new PolicyEnforcerConfig();
+        PolicyEnforcerConfig.PathConfig existing = path("/existing", "Existing");
+        existing.setId("existing-id");
+        policyEnforcerConfig.getPaths().add(existing);
+        keycloakSpringBootProperties.setPolicyEnforcerConfig(policyEnforcerConfig);
+        ApplicationContext context = Mockito.mock(ApplicationContext.class);
+        Mockito.when(context.getBeansWithAnnotation(Mockito.any()))
+                .thenReturn(Map.of("ControllerWithAuthzScopes", new ControllerV2WithAuthzScopes()));
+        AutoconfigurationService autoconfigurationService = new AutoconfigurationService(context,
+                keycloakSpringBootProperties, List.of(new SwaggerV2OperationService()));
+        ReflectionTestUtils.setField(autoconfigurationService, "resolveResourceIds", true);
+
+        autoconfigurationService.updateKeycloakConfiguration();
+
+        PolicyEnforcerConfig.PathConfig scanned = policyEnforcerConfig.getPaths().stream()
+                .filter(pathConfig -> "/authorized".equals(pathConfig.getPath())).findFirst().orElseThrow();
+        Assertions.assertEquals("id-0", scanned.getId());
+        Assertions.assertTrue(autoconfigurationService.hasResolvedResourceId(scanned));
+        Assertions.assertFalse(autoconfigurationService.hasResolvedResourceId(existing));
+
+        AuthorizationSettingsDTO settings = new JsonKeycloakConfigurationGenerator(keycloakSpringBootProperties,
+                autoconfigurationService).generateConfigurationAsJson();
+        Assertions.assertEquals(List.of("Entity Reader"), settings.getResources().stream()
+                .map(AuthorizedResourceDTO::getName).collect(Collectors.toList()));
+        Assertions.assertEquals(1, settings.getPolicies().size());
+
+        ExportIndex.Page page = new ExportIndex(policyEnforcerConfig.getPaths(), autoconfigurationService::hasResolvedResourceId)
+                .query(new ExportIndex.Query(null, "entity:read", null, null, null, 10));
+        Assertions.assertEquals(List.of(List.of(scanned)), page.getResources());
+    }
+
+    private URI realmUri() {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + "/realms/test");
+    }
+
+    private PolicyEnforcerConfig.PathConfig path(String path, String name) {
+        PolicyEnforcerConfig.PathConfig pathConfig = new PolicyEnforcerConfig.PathConfig();
+        pathConfig.setPath(path);
+        pathConfig.setName(name);
+        return pathConfig;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+}
@@ -0,0 +1,149 @@
+package it.maconsulting.kcautoconf;
+
+import it.maconsulting.kcautoconf.fixtures.ApiWithInterfaceMappings;
+import it.maconsulting.kcautoconf.fixtures.ControllerV3WithAuthzScopes;
+import it.maconsulting.kcautoconf.fixtures.ControllerWithInterfaceMappings;
+import it.maconsulting.kcautoconf.fixtures.ControllerWithSingleRequestMapping;
+import it.maconsulting.kcautoconf.scan.ScanCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.representations.adapters.config.PolicyEnforcerConfig;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Michele Arciprete
+ * @since 0.5.0
+ */
+class ScanCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void givenStoredEntries_theyAreLoaded() throws Exception {
+        Path file = directory.resolve("scan.cache");
+        String fingerprint = ScanCache.fingerprint(ControllerV3WithAuthzScopes.class);
+        new ScanCache(file, "v3").store(Map.of(ControllerV3WithAuthzScopes.class.getName(),
+                new ScanCache.Entry(fingerprint, List.of(fragment()), Map.of("get()", List.of("/authorized")))));
+
+        Map<String, ScanCache.Entry> entries = new ScanCache(file, "v3").load();
+
+        ScanCache.Entry entry = entries.get(ControllerV3WithAuthzScopes.class.getName());
+        Assertions.assertEquals(fingerprint, entry.getFingerprint());
+        PolicyEnforcerConfig.PathConfig pathConfig = entry.getFragments().get(0);
+        Assertions.assertEquals("/authorized", pathConfig.getPath());
+        Assertions.assertEquals("Entity Getter", pathConfig.getName());
+        Assertions.assertEquals(PolicyEnforcerConfig.EnforcementMode.DISABLED, pathConfig.getEnforcementMode());
+        Assertions.assertEquals("GET", pathConfig.getMethods().get(0).getMethod());
+        Assertions.assertEquals(List.of("entity:read"), pathConfig.getMethods().get(0).getScopes());
+        Assertions.assertEquals(Map.of("get()", List.of("/authorized")), entry.getHandlerPaths());
+        Assertions.assertEquals("get()", ScanCache.methodKey(ControllerV3WithAuthzScopes.class.getMethod("get")));
+        Assertions.assertNotEquals(fingerprint, ScanCache.fingerprint(ControllerWithSingleRequestMapping.class));
+    }
+
+    @Test
+    void givenCorruptOrForeignCache_itIsIgnored() throws Exception {
+        Path file = directory.resolve("scan.cache");
+        new ScanCache(file, "v3").store(Map.of("foo", new ScanCache.Entry("abc", List.of(fragment()))));
+
+        Assertions.assertTrue(new ScanCache(file, "v2").load().isEmpty());
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x5a;
+        Files.write(file, bytes);
+        Assertions.assertTrue(new ScanCache(file, "v3").load().isEmpty());
+
+        Files.write(file, new byte[]{1, 2, 3});
+        Assertions.assertTrue(new ScanCache(file, "v3").load().isEmpty());
+    }
+
+    @Test
+    void givenChangedInterface_theFingerprintOfItsControllersChanges() throws Exception {
+        String controller = ControllerWithInterfaceMappings.class.getName();
+        String api = ApiWithInterfaceMappings.class.getName();
+
+        String original = ScanCache.fingerprint(new IsolatingClassLoader(controller, api, false).loadClass(controller));
+        String unchanged = ScanCache.fingerprint(new IsolatingClassLoader(controller, api, false).loadClass(controller));
+        String changed = ScanCache.fingerprint(new IsolatingClassLoader(controller, api, true).loadClass(controller));
+
+        Assertions.assertNotNull(original);
+        Assertions.assertEquals(original, unchanged);
+        Assertions.assertNotEquals(original, changed);
+    }
+
+    private PolicyEnforcerConfig.PathConfig fragment() {
+        PolicyEnforcerConfig.PathConfig pathConfig = new PolicyEnforcerConfig.PathConfig();
+        pathConfig.setPath("/authorized");
+        pathConfig.setName("Entity Getter");
+        pathConfig.setEnforcementMode(PolicyEnforcerConfig.EnforcementMode.DISABLED);
+        PolicyEnforcerConfig.MethodConfig methodConfig = new PolicyEnforcerConfig.MethodConfig();
+        methodConfig.setMethod("GET");
+        methodConfig.setScopes(List.of("entity:read"));
+        pathConfig.getMethods().add(methodConfig);
+        return pathConfig;
+    }
+
+    /**
+     * Defines the controller and its interface on its own, serving a changed bytecode file for the interface if
+     * asked to, as after a recompilation of the interface alone.
+     */
+    private static final class IsolatingClassLoader extends ClassLoader {
+        private final String controller;
+        private final String api;
+        private final boolean changeApi;
+
+        private IsolatingClassLoader(String controller, String api, boolean changeApi) {
+            super(ScanCacheTest.class.getClassLoader());
+            this.controller = controller;
+            this.api = api;
+            this.changeApi = changeApi;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(controller) && !name.equals(api)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> type = findLoadedClass(name);
+                if (type == null) {
+                    byte[] bytecode = readBytecode(name);
+                    type = defineClass(name, bytecode, 0, bytecode.length);
+                }
+                return type;
+            }
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            if (changeApi && name.equals(resourceName(api))) {
+                byte[] bytecode = readBytecode(api);
+                byte[] changed = Arrays.copyOf(bytecode, bytecode.length + 1);
+                return new ByteArrayInputStream(changed);
+            }
+            return super.getResourceAsStream(name);
+        }
+
+        private byte[] readBytecode(String name) {
+            try (InputStream in = getParent().getResourceAsStream(resourceName(name))) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static String resourceName(String name) {
+            return name.replace('.', '/') + ".class";
+        }
+    }
+}
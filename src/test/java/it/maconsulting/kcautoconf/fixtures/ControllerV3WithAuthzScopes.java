@@ -17,6 +17,7 @@ package it.maconsulting.kcautoconf.fixtures;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -26,6 +27,7 @@ import org.springframework.web.bind.annotation.RestController;
  * @since 1.0-SNAPSHOT
  */
 @RestController
+@Tag(name = "Entities")
 @RequestMapping("authorized")
 public class ControllerV3WithAuthzScopes {
 